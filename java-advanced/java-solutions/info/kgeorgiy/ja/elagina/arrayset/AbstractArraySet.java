@@ -0,0 +1,272 @@
+package info.kgeorgiy.ja.elagina.arrayset;
+
+import java.util.*;
+
+/**
+ * Base of immutable navigable sets, stored in sorted arrays without duplicates.
+ * A set is a view of the range {@code [from, to)} of its array in ascending or descending order,
+ * views share the array.
+ * @param <T> type of elements
+ * @author Elagina Alena
+ */
+abstract class AbstractArraySet<T> extends AbstractSet<T> implements NavigableSet<T> {
+
+    final int from;
+    final int to;
+    final boolean descending;
+
+    AbstractArraySet(int from, int to, boolean descending) {
+        this.from = from;
+        this.to = to;
+        this.descending = descending;
+    }
+
+    /**
+     * @return order of the array, {@code null} for natural ordering
+     */
+    abstract Comparator<? super T> order();
+
+    /**
+     * @param index index of the element in the array
+     * @return element with given index
+     */
+    abstract T get(int index);
+
+    /**
+     * Binary search of the key in {@code [from, to)}
+     * @param key element to search for
+     * @return index of the key in the array, if it is present, otherwise {@code -(insertion point) - 1}
+     */
+    abstract int search(T key);
+
+    /**
+     * @param from first index in the array, inclusive
+     * @param to last index in the array, exclusive
+     * @param descending whether the view iterates in descending order
+     * @return view of elements with indices in {@code [from, to)}
+     */
+    abstract AbstractArraySet<T> view(int from, int to, boolean descending);
+
+    /**
+     * @param index index in this set
+     * @return index of the same element in the array
+     */
+    int physical(int index) {
+        return descending ? to - 1 - index : from + index;
+    }
+
+    @SuppressWarnings("unchecked")
+    int compare(T a, T b) {
+        Comparator<? super T> comparator = comparator();
+        return comparator != null ? comparator.compare(a, b) : ((Comparable<? super T>) a).compareTo(b);
+    }
+
+    /**
+     * @return index in the array of the first element, that is not less than {@code element}
+     */
+    private int lowerBound(T element) {
+        int index = search(Objects.requireNonNull(element));
+        return index >= 0 ? index : -(index + 1);
+    }
+
+    /**
+     * @return index in the array of the first element, that is greater than {@code element}
+     */
+    private int upperBound(T element) {
+        int index = search(Objects.requireNonNull(element));
+        return index >= 0 ? index + 1 : -(index + 1);
+    }
+
+    private T elementOrNull(int index) {
+        return from <= index && index < to ? get(index) : null;
+    }
+
+    @Override
+    public Comparator<? super T> comparator() {
+        return descending ? Collections.reverseOrder(order()) : order();
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        return new Iterator<>() {
+            private int index = 0;
+
+            @Override
+            public boolean hasNext() {
+                return index < size();
+            }
+
+            @Override
+            public T next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return get(physical(index++));
+            }
+        };
+    }
+
+    @Override
+    public Iterator<T> descendingIterator() {
+        return descendingSet().iterator();
+    }
+
+    @Override
+    public NavigableSet<T> descendingSet() {
+        return view(from, to, !descending);
+    }
+
+    @Override
+    public int size() {
+        return to - from;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public boolean contains(Object o) {
+        return search((T) Objects.requireNonNull(o)) >= 0;
+    }
+
+    /**
+     * If {@code c} is sorted in the same order, it is merged with this set by galloping search,
+     * that costs {@code O(m log(n / m))} comparisons for {@code m} elements of {@code c}
+     */
+    @SuppressWarnings("unchecked")
+    @Override
+    public boolean containsAll(Collection<?> c) {
+        if (!(c instanceof SortedSet<?> sorted) || !Objects.equals(sorted.comparator(), comparator())) {
+            return super.containsAll(c);
+        }
+
+        int n = size();
+        int pos = 0;
+        for (Object o : c) {
+            T key = (T) Objects.requireNonNull(o);
+            int hi = pos;
+            int step = 1;
+            while (hi < n && compare(get(physical(hi)), key) < 0) {
+                pos = hi + 1;
+                hi += step;
+                step <<= 1;
+            }
+            int l = pos;
+            int r = Math.min(hi, n);
+            while (l < r) {
+                int m = (l + r) >>> 1;
+                if (compare(get(physical(m)), key) < 0) {
+                    l = m + 1;
+                } else {
+                    r = m;
+                }
+            }
+            if (l == n || compare(get(physical(l)), key) != 0) {
+                return false;
+            }
+            pos = l + 1;
+        }
+        return true;
+    }
+
+    public int indexOf(T element) {
+        int index = search(Objects.requireNonNull(element));
+        if (!descending) {
+            return index >= 0 ? index - from : -(index + 1) - from;
+        }
+        return index >= 0 ? to - 1 - index : to + (index + 1);
+    }
+
+    @Override
+    public T lower(T t) {
+        return elementOrNull(descending ? upperBound(t) : lowerBound(t) - 1);
+    }
+
+    @Override
+    public T floor(T t) {
+        return elementOrNull(descending ? lowerBound(t) : upperBound(t) - 1);
+    }
+
+    @Override
+    public T ceiling(T t) {
+        return elementOrNull(descending ? upperBound(t) - 1 : lowerBound(t));
+    }
+
+    @Override
+    public T higher(T t) {
+        return elementOrNull(descending ? lowerBound(t) - 1 : upperBound(t));
+    }
+
+    @Override
+    public T pollFirst() {
+        throw new UnsupportedOperationException("ArraySet is immutable");
+    }
+
+    @Override
+    public T pollLast() {
+        throw new UnsupportedOperationException("ArraySet is immutable");
+    }
+
+    @Override
+    public NavigableSet<T> subSet(T fromElement, boolean fromInclusive, T toElement, boolean toInclusive) {
+        if (compare(fromElement, toElement) > 0) {
+            throw new IllegalArgumentException("fromKey > toKey");
+        }
+        int lo;
+        int hi;
+        if (descending) {
+            lo = toInclusive ? lowerBound(toElement) : upperBound(toElement);
+            hi = fromInclusive ? upperBound(fromElement) : lowerBound(fromElement);
+        } else {
+            lo = fromInclusive ? lowerBound(fromElement) : upperBound(fromElement);
+            hi = toInclusive ? upperBound(toElement) : lowerBound(toElement);
+        }
+        return view(lo, Math.max(lo, hi), descending);
+    }
+
+    @Override
+    public NavigableSet<T> headSet(T toElement, boolean inclusive) {
+        if (descending) {
+            return view(inclusive ? lowerBound(toElement) : upperBound(toElement), to, true);
+        }
+        return view(from, inclusive ? upperBound(toElement) : lowerBound(toElement), false);
+    }
+
+    @Override
+    public NavigableSet<T> tailSet(T fromElement, boolean inclusive) {
+        if (descending) {
+            return view(from, inclusive ? upperBound(fromElement) : lowerBound(fromElement), true);
+        }
+        return view(inclusive ? lowerBound(fromElement) : upperBound(fromElement), to, false);
+    }
+
+    @Override
+    public SortedSet<T> subSet(T fromElement, T toElement) {
+        return subSet(fromElement, true, toElement, false);
+    }
+
+    @Override
+    public SortedSet<T> headSet(T toElement) {
+        return headSet(toElement, false);
+    }
+
+    @Override
+    public SortedSet<T> tailSet(T fromElement) {
+        return tailSet(fromElement, true);
+    }
+
+    public T takeByIndex(int index) {
+        if (index < 0 || index >= size()) {
+            throw new NoSuchElementException("Cannot take this element");
+        }
+        return get(physical(index));
+    }
+
+    @Override
+    public T first() {
+        return takeByIndex(0);
+    }
+
+    @Override
+    public T last() {
+        return takeByIndex(size() - 1);
+    }
+}
@@ -2,108 +2,221 @@ package info.kgeorgiy.ja.elagina.arrayset;
 
 import java.util.*;
 
-public class ArraySet<T> extends AbstractSet<T> implements SortedSet<T> {
+public class ArraySet<T> extends AbstractArraySet<T> {
 
-    private final List<T> data;
+    private final T[] data;
+    private final T[] eytzinger;
     private final Comparator<? super T> comparator;
 
     public ArraySet() {
-        data = Collections.emptyList();
-        comparator = null;
-    }
-
-    private ArraySet(Comparator<? super T> comparator) {
-        this.data = Collections.emptyList();
-        this.comparator = comparator;
+        this(Collections.emptyList(), null);
     }
 
     public ArraySet(Collection<? extends T> collection) {
-        data = new ArrayList<>(new TreeSet<>(collection));
-        comparator = null;
+        this(collection, null);
     }
 
     public ArraySet(Collection<? extends T> collection, Comparator<? super T> comparator) {
-        SortedSet<T> newSet = new TreeSet<>(comparator);
+        this(sorted(collection, comparator), comparator);
+    }
+
+    private ArraySet(T[] data, Comparator<? super T> comparator) {
+        this(data, null, 0, data.length, false, comparator);
+    }
+
+    private ArraySet(T[] data, T[] eytzinger, int from, int to, boolean descending,
+                     Comparator<? super T> comparator) {
+        super(from, to, descending);
+        this.data = data;
+        this.eytzinger = eytzinger;
         this.comparator = comparator;
-        newSet.addAll(collection);
-        data = new ArrayList<>(newSet);
     }
 
-    @Override
-    public Iterator<T> iterator() {
-        return Collections.unmodifiableList(data).iterator();
+    /**
+     * Returns the same set with an additional copy of the elements in Eytzinger (breadth-first) order.
+     * Lookups in this layout touch consecutive cache lines on consecutive steps
+     * and are faster than binary search for sets larger than the CPU caches.
+     * All views of the returned set share the index.
+     * @return set, that uses Eytzinger layout for {@code contains}
+     */
+    @SuppressWarnings("unchecked")
+    public ArraySet<T> withEytzingerIndex() {
+        if (eytzinger != null) {
+            return this;
+        }
+        T[] index = (T[]) new Object[data.length + 1];
+        fill(index, 0, 1);
+        return new ArraySet<>(data, index, from, to, descending, comparator);
     }
 
-    @Override
-    public int size() {
-        return data.size();
+    private int fill(T[] index, int i, int k) {
+        if (k < index.length) {
+            i = fill(index, i, 2 * k);
+            index[k] = data[i++];
+            i = fill(index, i, 2 * k + 1);
+        }
+        return i;
+    }
+
+    /**
+     * Sorts the elements and removes duplicates, in {@code O(n)} if they are already sorted
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> T[] sorted(Collection<? extends T> collection, Comparator<? super T> comparator) {
+        T[] values = (T[]) collection.toArray();
+        if (collection instanceof SortedSet<?> set && Objects.equals(set.comparator(), comparator)) {
+            return values;
+        }
+
+        Comparator<? super T> order = comparator != null ? comparator : (a, b) -> ((Comparable<? super T>) a).compareTo(b);
+        if (comparator == null) {
+            for (T value : values) {
+                Objects.requireNonNull(value);
+            }
+        }
+        for (int i = 1; i < values.length; i++) {
+            if (order.compare(values[i - 1], values[i]) > 0) {
+                Arrays.sort(values, order);
+                break;
+            }
+        }
+
+        int size = 0;
+        for (int i = 0; i < values.length; i++) {
+            if (size == 0 || order.compare(values[size - 1], values[i]) != 0) {
+                values[size++] = values[i];
+            }
+        }
+        return size == values.length ? values : Arrays.copyOf(values, size);
     }
 
     @Override
-    public Comparator<? super T> comparator() {
+    Comparator<? super T> order() {
         return comparator;
     }
 
     @SuppressWarnings("unchecked")
     @Override
     public boolean contains(Object o) {
-        return Collections.binarySearch(data, (T) Objects.requireNonNull(o), comparator) >= 0;
+        if (eytzinger == null) {
+            return super.contains(o);
+        }
+        T key = (T) Objects.requireNonNull(o);
+        if (from == to || compareInOrder(key, data[from]) < 0 || compareInOrder(key, data[to - 1]) > 0) {
+            return false;
+        }
+        int k = 1;
+        while (k < eytzinger.length) {
+            k = 2 * k + (compareInOrder(eytzinger[k], key) < 0 ? 1 : 0);
+        }
+        k >>>= Integer.numberOfTrailingZeros(~k) + 1;
+        return k != 0 && compareInOrder(eytzinger[k], key) == 0;
     }
 
-    public int indexOf(T element) {
-        int index = Collections.binarySearch(data, Objects.requireNonNull(element), comparator);
+    @SuppressWarnings("unchecked")
+    private int compareInOrder(T a, T b) {
+        return comparator != null ? comparator.compare(a, b) : ((Comparable<? super T>) a).compareTo(b);
+    }
 
-        if (index >= 0) {
-            return index;
-        } else {
-            return -(index + 1);
-        }
+    @Override
+    T get(int index) {
+        return data[index];
     }
 
-    // remove unchecked
-    @SuppressWarnings({"unchecked"})
+    @SuppressWarnings("unchecked")
     @Override
-    public SortedSet<T> subSet(T fromElement, T toElement) {
-        if (comparator != null) {
-            if (comparator.compare(fromElement, toElement) > 0) {
-                throw new IllegalArgumentException("fromKey > toKey");
+    int search(T key) {
+        int l = from;
+        int r = to - 1;
+        if (comparator == null) {
+            Comparable<? super T> k = (Comparable<? super T>) key;
+            while (l <= r) {
+                int m = (l + r) >>> 1;
+                int cmp = k.compareTo(data[m]);
+                if (cmp > 0) {
+                    l = m + 1;
+                } else if (cmp < 0) {
+                    r = m - 1;
+                } else {
+                    return m;
+                }
+            }
+        } else {
+            while (l <= r) {
+                int m = (l + r) >>> 1;
+                int cmp = comparator.compare(key, data[m]);
+                if (cmp > 0) {
+                    l = m + 1;
+                } else if (cmp < 0) {
+                    r = m - 1;
+                } else {
+                    return m;
+                }
             }
-        } else if (((Comparable<T>) fromElement).compareTo(toElement) > 0) {
-            throw new IllegalArgumentException("fromKey > toKey");
         }
-        return new ArraySet<T>(data.subList(indexOf(fromElement), indexOf(toElement)));
+        return -(l + 1);
     }
 
-    @Override
-    public SortedSet<T> headSet(T toElement) {
-        if (isEmpty()) {
-            return new ArraySet<>(data, comparator);
-        }
-        return new ArraySet<T>(data.subList(0, indexOf(toElement)), comparator);
+    public ArraySet<T> union(ArraySet<T> other) {
+        return merge(other, true, true, true);
     }
 
-    @Override
-    public SortedSet<T> tailSet(T fromElement) {
-        if (isEmpty()) {
-            return new ArraySet<>(data, comparator);
-        }
-        return new ArraySet<T>(data.subList(indexOf(fromElement), size()), comparator);
+    public ArraySet<T> intersection(ArraySet<T> other) {
+        return merge(other, false, true, false);
     }
 
-    public T takeByIndex(int index) {
-        if (index < 0 || index >= size()) {
-            throw new NoSuchElementException("Cannot take this element");
-        }
-        return data.get(index);
+    public ArraySet<T> difference(ArraySet<T> other) {
+        return merge(other, true, false, false);
     }
 
-    @Override
-    public T first() {
-        return takeByIndex(0);
+    /**
+     * Linear merge of two sets
+     * @param left whether to keep elements present only in this set
+     * @param both whether to keep elements present in both sets
+     * @param right whether to keep elements present only in {@code other}
+     */
+    @SuppressWarnings("unchecked")
+    private ArraySet<T> merge(ArraySet<T> other, boolean left, boolean both, boolean right) {
+        ArraySet<T> that = Objects.equals(other.comparator(), comparator()) ? other : new ArraySet<>(other, comparator());
+        int n = size();
+        int m = that.size();
+        T[] result = (T[]) new Object[(left ? n : 0) + (right ? m : 0) + (both && !left && !right ? Math.min(n, m) : 0)];
+        int size = 0;
+        int i = 0;
+        int j = 0;
+        while (i < n && j < m) {
+            T a = get(physical(i));
+            T b = that.get(that.physical(j));
+            int cmp = compare(a, b);
+            if (cmp < 0) {
+                if (left) {
+                    result[size++] = a;
+                }
+                i++;
+            } else if (cmp > 0) {
+                if (right) {
+                    result[size++] = b;
+                }
+                j++;
+            } else {
+                if (both) {
+                    result[size++] = a;
+                }
+                i++;
+                j++;
+            }
+        }
+        for (; left && i < n; i++) {
+            result[size++] = get(physical(i));
+        }
+        for (; right && j < m; j++) {
+            result[size++] = that.get(that.physical(j));
+        }
+        return new ArraySet<>(size == result.length ? result : Arrays.copyOf(result, size), comparator());
     }
 
     @Override
-    public T last() {
-        return takeByIndex(size() - 1);
+    ArraySet<T> view(int from, int to, boolean descending) {
+        return new ArraySet<>(data, eytzinger, from, to, descending, comparator);
     }
 }
@@ -0,0 +1,152 @@
+package info.kgeorgiy.ja.elagina.arrayset;
+
+import java.util.*;
+import java.util.function.Predicate;
+
+/**
+ * Thread-safe sorted set with copy-on-write {@link ArraySet} snapshots.
+ * Readers access the current snapshot without locking.
+ * Writers collect updates into a sorted delta, that is merged with the snapshot
+ * once it reaches {@code batchSize} updates or on {@link #flush()},
+ * and the merged snapshot is published with a single volatile write.
+ * Updates are not visible to readers until they are published.
+ * @param <T> type of elements
+ * @author Elagina Alena
+ */
+public class ConcurrentArraySet<T> extends AbstractSet<T> {
+
+    private final Comparator<? super T> comparator;
+    private final int batchSize;
+    private final TreeMap<T, Boolean> delta;
+    private volatile ArraySet<T> snapshot;
+
+    /**
+     * Creates empty set, that publishes every update immediately
+     */
+    public ConcurrentArraySet() {
+        this(Collections.emptyList(), null, 1);
+    }
+
+    /**
+     * @param collection initial elements
+     * @param comparator order of elements, {@code null} for natural ordering
+     * @param batchSize number of updates, after which they are published
+     */
+    public ConcurrentArraySet(Collection<? extends T> collection, Comparator<? super T> comparator, int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("batch size must be > 0");
+        }
+        this.comparator = comparator;
+        this.batchSize = batchSize;
+        this.delta = new TreeMap<>(comparator);
+        this.snapshot = new ArraySet<>(collection, comparator);
+    }
+
+    /**
+     * @return last published state of the set
+     */
+    public ArraySet<T> snapshot() {
+        return snapshot;
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        return snapshot.iterator();
+    }
+
+    @Override
+    public int size() {
+        return snapshot.size();
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return snapshot.contains(o);
+    }
+
+    @Override
+    public boolean add(T t) {
+        return update(Objects.requireNonNull(t), true);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public boolean remove(Object o) {
+        return update((T) Objects.requireNonNull(o), false);
+    }
+
+    @Override
+    public synchronized boolean removeAll(Collection<?> c) {
+        Objects.requireNonNull(c);
+        boolean changed = false;
+        for (Object o : c) {
+            changed |= remove(o);
+        }
+        return changed;
+    }
+
+    @Override
+    public boolean retainAll(Collection<?> c) {
+        Objects.requireNonNull(c);
+        return removeIf(e -> !c.contains(e));
+    }
+
+    @Override
+    public synchronized boolean removeIf(Predicate<? super T> filter) {
+        Objects.requireNonNull(filter);
+        List<T> rejected = new ArrayList<>();
+        for (T e : snapshot) {
+            if (!delta.containsKey(e) && filter.test(e)) {
+                rejected.add(e);
+            }
+        }
+        for (Map.Entry<T, Boolean> e : delta.entrySet()) {
+            if (e.getValue() && filter.test(e.getKey())) {
+                rejected.add(e.getKey());
+            }
+        }
+        boolean changed = false;
+        for (T e : rejected) {
+            changed |= update(e, false);
+        }
+        return changed;
+    }
+
+    /**
+     * Removes all elements, including unpublished updates, and publishes the empty set
+     */
+    @Override
+    public synchronized void clear() {
+        delta.clear();
+        snapshot = new ArraySet<>(Collections.emptyList(), comparator);
+    }
+
+    /**
+     * @return whether the update changes the set, taking unpublished updates into account
+     */
+    private synchronized boolean update(T element, boolean present) {
+        Boolean pending = delta.put(element, present);
+        boolean was = pending != null ? pending : snapshot.contains(element);
+        if (delta.size() >= batchSize) {
+            flush();
+        }
+        return was != present;
+    }
+
+    /**
+     * Publishes all pending updates
+     */
+    public synchronized void flush() {
+        if (delta.isEmpty()) {
+            return;
+        }
+        List<T> added = new ArrayList<>();
+        List<T> removed = new ArrayList<>();
+        for (Map.Entry<T, Boolean> e : delta.entrySet()) {
+            (e.getValue() ? added : removed).add(e.getKey());
+        }
+        delta.clear();
+        snapshot = snapshot.difference(new ArraySet<>(removed, comparator))
+                .union(new ArraySet<>(added, comparator));
+    }
+}
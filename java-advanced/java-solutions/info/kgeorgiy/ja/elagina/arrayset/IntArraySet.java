@@ -0,0 +1,136 @@
+package info.kgeorgiy.ja.elagina.arrayset;
+
+import java.util.*;
+
+/**
+ * {@link ArraySet} of {@code int} values, stored in an {@code int[]} without boxing
+ * @author Elagina Alena
+ */
+public class IntArraySet extends AbstractArraySet<Integer> {
+
+    private final int[] data;
+    private final int[] eytzinger;
+
+    public IntArraySet() {
+        this(new int[0]);
+    }
+
+    public IntArraySet(Collection<Integer> collection) {
+        this(distinctSorted(collection.stream().mapToInt(Integer::intValue).toArray()));
+    }
+
+    public static IntArraySet of(int... values) {
+        return new IntArraySet(distinctSorted(values.clone()));
+    }
+
+    private IntArraySet(int[] data) {
+        this(data, null, 0, data.length, false);
+    }
+
+    private IntArraySet(int[] data, int[] eytzinger, int from, int to, boolean descending) {
+        super(from, to, descending);
+        this.data = data;
+        this.eytzinger = eytzinger;
+    }
+
+    /**
+     * Returns the same set with an additional copy of the elements in Eytzinger (breadth-first) order.
+     * Lookups in this layout touch consecutive cache lines on consecutive steps
+     * and are faster than binary search for sets larger than the CPU caches.
+     * All views of the returned set share the index.
+     * @return set, that uses Eytzinger layout for {@code contains}
+     */
+    public IntArraySet withEytzingerIndex() {
+        if (eytzinger != null) {
+            return this;
+        }
+        int[] index = new int[data.length + 1];
+        fill(index, 0, 1);
+        return new IntArraySet(data, index, from, to, descending);
+    }
+
+    private int fill(int[] index, int i, int k) {
+        if (k < index.length) {
+            i = fill(index, i, 2 * k);
+            index[k] = data[i++];
+            i = fill(index, i, 2 * k + 1);
+        }
+        return i;
+    }
+
+    private static int[] distinctSorted(int[] values) {
+        for (int i = 1; i < values.length; i++) {
+            if (values[i - 1] > values[i]) {
+                Arrays.sort(values);
+                break;
+            }
+        }
+        int size = 0;
+        for (int i = 0; i < values.length; i++) {
+            if (i == 0 || values[i] != values[i - 1]) {
+                values[size++] = values[i];
+            }
+        }
+        return size == values.length ? values : Arrays.copyOf(values, size);
+    }
+
+    @Override
+    Comparator<? super Integer> order() {
+        return null;
+    }
+
+    @Override
+    Integer get(int index) {
+        return data[index];
+    }
+
+    @Override
+    int search(Integer key) {
+        return search(key.intValue());
+    }
+
+    private int search(int key) {
+        int l = from;
+        int r = to - 1;
+        while (l <= r) {
+            int m = (l + r) >>> 1;
+            if (data[m] < key) {
+                l = m + 1;
+            } else if (data[m] > key) {
+                r = m - 1;
+            } else {
+                return m;
+            }
+        }
+        return -(l + 1);
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return contains(((Integer) Objects.requireNonNull(o)).intValue());
+    }
+
+    public boolean contains(int value) {
+        if (eytzinger == null) {
+            return search(value) >= 0;
+        }
+        if (from == to || value < data[from] || value > data[to - 1]) {
+            return false;
+        }
+        int k = 1;
+        while (k < eytzinger.length) {
+            k = 2 * k + (eytzinger[k] < value ? 1 : 0);
+        }
+        k >>>= Integer.numberOfTrailingZeros(~k) + 1;
+        return k != 0 && eytzinger[k] == value;
+    }
+
+    public int getInt(int index) {
+        return data[physical(index)];
+    }
+
+    @Override
+    IntArraySet view(int from, int to, boolean descending) {
+        return new IntArraySet(data, eytzinger, from, to, descending);
+    }
+}
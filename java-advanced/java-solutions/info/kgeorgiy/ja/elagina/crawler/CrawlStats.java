@@ -0,0 +1,191 @@
+package info.kgeorgiy.ja.elagina.crawler;
+
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Thread-safe statistics of a {@link WebCrawler}.
+ * Latency histograms are kept for at most {@value #MAX_HOSTS} hosts,
+ * least recently active hosts are dropped when there are more.
+ * @author Elagina Alena
+ */
+public final class CrawlStats implements CrawlStatsMXBean {
+    private static final int MAX_HOSTS = 1024;
+
+    private final long start = System.nanoTime();
+    private final LongAdder pages = new LongAdder();
+    private final AtomicInteger downloadQueue = new AtomicInteger();
+    private final AtomicInteger extractQueue = new AtomicInteger();
+    private final AtomicInteger hostQueue = new AtomicInteger();
+    private final ConcurrentMap<String, HostStats> hosts = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, LongAdder> errors = new ConcurrentHashMap<>();
+
+    /**
+     * Creates empty statistics
+     */
+    CrawlStats() {}
+
+    private static final class HostStats {
+        private final LatencyHistogram download = new LatencyHistogram();
+        private final LatencyHistogram extract = new LatencyHistogram();
+        private volatile long used;
+    }
+
+    private HostStats host(final String host) {
+        HostStats stats = hosts.get(host);
+        if (stats == null) {
+            stats = hosts.computeIfAbsent(host, h -> new HostStats());
+            if (hosts.size() > MAX_HOSTS) {
+                dropIdleHosts();
+            }
+        }
+        stats.used = System.nanoTime();
+        return stats;
+    }
+
+    /**
+     * Drops least recently active hosts, leaving three quarters of {@link #MAX_HOSTS}
+     */
+    private synchronized void dropIdleHosts() {
+        if (hosts.size() <= MAX_HOSTS) {
+            return;
+        }
+        hosts.entrySet().stream()
+                .sorted(Comparator.comparingLong(e -> e.getValue().used))
+                .limit(hosts.size() - MAX_HOSTS / 4 * 3)
+                .toList()
+                .forEach(e -> hosts.remove(e.getKey(), e.getValue()));
+    }
+
+    void downloaded(final String host, final long nanos) {
+        pages.increment();
+        host(host).download.record(nanos);
+    }
+
+    void extracted(final String host, final long nanos) {
+        host(host).extract.record(nanos);
+    }
+
+    void error(final Exception e) {
+        errors.computeIfAbsent(e.getClass().getName(), c -> new LongAdder()).increment();
+    }
+
+    AtomicInteger downloadQueue() {
+        return downloadQueue;
+    }
+
+    AtomicInteger extractQueue() {
+        return extractQueue;
+    }
+
+    AtomicInteger hostQueue() {
+        return hostQueue;
+    }
+
+    /**
+     * Latency histograms of a single host
+     * @param download download latency
+     * @param extract link extraction latency
+     */
+    public record HostSnapshot(LatencyHistogram.Snapshot download, LatencyHistogram.Snapshot extract) {}
+
+    /**
+     * Statistics at some moment
+     * @param elapsedNanos time since creation of the crawler
+     * @param pages number of downloaded pages
+     * @param downloadQueue number of downloads submitted to downloaders but not started yet
+     * @param extractQueue number of documents submitted to extractors but not processed yet
+     * @param hostQueue number of downloads waiting in per-host lists
+     * @param hosts latency histograms by recently active host
+     * @param errors number of errors by exception class name
+     */
+    public record Snapshot(long elapsedNanos, long pages, int downloadQueue, int extractQueue, int hostQueue,
+                           Map<String, HostSnapshot> hosts, Map<String, Long> errors) {
+        /**
+         * @return mean number of downloaded pages per second
+         */
+        public double pagesPerSecond() {
+            return rate(pages, elapsedNanos);
+        }
+
+        /**
+         * @return total number of errors
+         */
+        public long errorCount() {
+            return errors.values().stream().mapToLong(Long::longValue).sum();
+        }
+    }
+
+    /**
+     * @return current statistics
+     */
+    public Snapshot snapshot() {
+        return new Snapshot(
+                System.nanoTime() - start,
+                pages.sum(),
+                downloadQueue.get(),
+                extractQueue.get(),
+                hostQueue.get(),
+                hosts.entrySet().stream().collect(Collectors.toUnmodifiableMap(Map.Entry::getKey,
+                        e -> new HostSnapshot(e.getValue().download.snapshot(), e.getValue().extract.snapshot()))),
+                getErrorCounts()
+        );
+    }
+
+    @Override
+    public long getPages() {
+        return pages.sum();
+    }
+
+    @Override
+    public double getPagesPerSecond() {
+        return rate(pages.sum(), System.nanoTime() - start);
+    }
+
+    private static double rate(final long pages, final long nanos) {
+        return nanos == 0 ? 0 : (double) pages * TimeUnit.SECONDS.toNanos(1) / nanos;
+    }
+
+    @Override
+    public int getDownloadQueueDepth() {
+        return downloadQueue.get();
+    }
+
+    @Override
+    public int getExtractQueueDepth() {
+        return extractQueue.get();
+    }
+
+    @Override
+    public int getHostQueueDepth() {
+        return hostQueue.get();
+    }
+
+    @Override
+    public Map<String, Long> getErrorCounts() {
+        return errors.entrySet().stream()
+                .collect(Collectors.toUnmodifiableMap(Map.Entry::getKey, e -> e.getValue().sum()));
+    }
+
+    @Override
+    public Map<String, Double> getDownloadP99MillisByHost() {
+        return p99ByHost(stats -> stats.download);
+    }
+
+    @Override
+    public Map<String, Double> getExtractP99MillisByHost() {
+        return p99ByHost(stats -> stats.extract);
+    }
+
+    private Map<String, Double> p99ByHost(final Function<HostStats, LatencyHistogram> histogram) {
+        return hosts.entrySet().stream().collect(Collectors.toUnmodifiableMap(Map.Entry::getKey,
+                e -> histogram.apply(e.getValue()).snapshot().quantileMillis(0.99)));
+    }
+}
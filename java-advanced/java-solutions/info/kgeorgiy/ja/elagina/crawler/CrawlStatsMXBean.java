@@ -0,0 +1,49 @@
+package info.kgeorgiy.ja.elagina.crawler;
+
+import java.util.Map;
+
+/**
+ * JMX view of {@link CrawlStats}
+ * @author Elagina Alena
+ */
+public interface CrawlStatsMXBean {
+    /**
+     * @return number of downloaded pages
+     */
+    long getPages();
+
+    /**
+     * @return mean number of downloaded pages per second since creation
+     */
+    double getPagesPerSecond();
+
+    /**
+     * @return number of downloads submitted to downloaders but not started yet
+     */
+    int getDownloadQueueDepth();
+
+    /**
+     * @return number of documents submitted to extractors but not processed yet
+     */
+    int getExtractQueueDepth();
+
+    /**
+     * @return number of downloads waiting in per-host lists
+     */
+    int getHostQueueDepth();
+
+    /**
+     * @return number of errors by exception class name
+     */
+    Map<String, Long> getErrorCounts();
+
+    /**
+     * @return 99th percentile of download latency in milliseconds by recently active host
+     */
+    Map<String, Double> getDownloadP99MillisByHost();
+
+    /**
+     * @return 99th percentile of extract latency in milliseconds by recently active host
+     */
+    Map<String, Double> getExtractP99MillisByHost();
+}
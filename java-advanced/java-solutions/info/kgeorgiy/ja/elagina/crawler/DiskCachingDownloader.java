@@ -0,0 +1,267 @@
+package info.kgeorgiy.ja.elagina.crawler;
+
+import info.kgeorgiy.java.advanced.crawler.Document;
+import info.kgeorgiy.java.advanced.crawler.Downloader;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * Thread-safe {@link Downloader} decorator, that keeps extracted links of downloaded documents
+ * in a content-addressed on-disk store, so that repeated crawls do not download them again.
+ * Stored documents are read through memory mapping, least recently used ones are evicted
+ * when the store exceeds its size limit.
+ * Documents, that were downloaded but not extracted, are remembered too: on later crawls they are
+ * downloaded only if their links are extracted. They are counted by the length of their URLs
+ * and are evicted before stored documents.
+ * Other files of the directory are never deleted.
+ * @author Elagina Alena
+ */
+public class DiskCachingDownloader implements Downloader, AutoCloseable {
+    private static final String INDEX = "index";
+    private static final String SEPARATOR = " ";
+    private static final String FETCHED = "-";
+    private static final String TEMP_PREFIX = "blob-";
+    private static final int HASH_LENGTH = 64;
+
+    private final Downloader downloader;
+    private final Path directory;
+    private final long maxBytes;
+    private final Map<String, String> urls = new HashMap<>();
+    private final Map<String, Set<String>> hashUrls = new HashMap<>();
+    private final LinkedHashMap<String, Long> blobs = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<String, Long> fetched = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes;
+
+    /**
+     * @param downloader downloader used on cache misses
+     * @param directory directory of the store, created if absent
+     * @param maxBytes maximum total size of stored documents
+     * @throws IOException if the store cannot be opened
+     */
+    public DiskCachingDownloader(final Downloader downloader, final Path directory, final long maxBytes)
+            throws IOException {
+        this.downloader = downloader;
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+
+        Files.createDirectories(directory);
+        final Path index = directory.resolve(INDEX);
+        if (Files.exists(index)) {
+            for (final String line : Files.readAllLines(index, StandardCharsets.UTF_8)) {
+                final int separator = line.indexOf(SEPARATOR);
+                if (separator < 0) {
+                    continue;
+                }
+                final String hash = line.substring(0, separator);
+                if (hash.equals(FETCHED)) {
+                    fetched(line.substring(separator + 1));
+                    continue;
+                }
+                if (!isHash(hash)) {
+                    continue;
+                }
+                final Path blob = blob(hash);
+                if (blobs.containsKey(hash) || Files.isRegularFile(blob)) {
+                    link(line.substring(separator + 1), hash);
+                    if (!blobs.containsKey(hash)) {
+                        blobs.put(hash, Files.size(blob));
+                        totalBytes += Files.size(blob);
+                    }
+                }
+            }
+        }
+        try (final Stream<Path> files = Files.list(directory)) {
+            for (final Path file : (Iterable<Path>) files::iterator) {
+                final String name = file.getFileName().toString();
+                if ((isHash(name) && !blobs.containsKey(name) || name.startsWith(TEMP_PREFIX))
+                        && Files.isRegularFile(file)) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+        evict();
+    }
+
+    /**
+     * Returns cached document or downloads it, if it is absent in the store
+     * @param url URL to download.
+     * @return downloaded document
+     * @throws IOException if an error occurred
+     */
+    @Override
+    public Document download(final String url) throws IOException {
+        final String hash;
+        final boolean known;
+        synchronized (this) {
+            hash = urls.get(url);
+            if (hash != null) {
+                blobs.get(hash);
+            }
+            known = fetched.get(url) != null;
+        }
+
+        if (hash != null) {
+            final List<String> links = read(hash);
+            if (links != null) {
+                return () -> links;
+            }
+        }
+        if (known) {
+            return () -> extract(url, downloader.download(url));
+        }
+
+        final Document document = downloader.download(url);
+        synchronized (this) {
+            if (!urls.containsKey(url)) {
+                fetched(url);
+                evict();
+            }
+        }
+        return () -> extract(url, document);
+    }
+
+    private List<String> extract(final String url, final Document document) throws IOException {
+        final List<String> links = document.extractLinks();
+        store(url, links);
+        return links;
+    }
+
+    private void fetched(final String url) {
+        if (fetched.put(url, (long) url.length()) == null) {
+            totalBytes += url.length();
+        }
+    }
+
+    /**
+     * Checks whether the name may be a name of a stored document, so that other files of the directory are kept
+     */
+    private static boolean isHash(final String name) {
+        return name.length() == HASH_LENGTH && name.chars().allMatch(c -> '0' <= c && c <= '9' || 'a' <= c && c <= 'f');
+    }
+
+    private Path blob(final String hash) {
+        return directory.resolve(hash);
+    }
+
+    private List<String> read(final String hash) throws IOException {
+        try (final FileChannel channel = FileChannel.open(blob(hash))) {
+            final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            final String content = StandardCharsets.UTF_8.decode(buffer).toString();
+            return content.isEmpty() ? List.of() : List.of(content.split("\n"));
+        } catch (final NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    private void store(final String url, final List<String> links) throws IOException {
+        final byte[] content = String.join("\n", links).getBytes(StandardCharsets.UTF_8);
+        final String hash = hash(content);
+        final Path blob = blob(hash);
+
+        synchronized (this) {
+            if (blobs.containsKey(hash)) {
+                link(url, hash);
+                return;
+            }
+        }
+
+        final Path temp = Files.createTempFile(directory, TEMP_PREFIX, null);
+        try {
+            Files.write(temp, content);
+            synchronized (this) {
+                if (!blobs.containsKey(hash)) {
+                    Files.move(temp, blob, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                    blobs.put(hash, (long) content.length);
+                    totalBytes += content.length;
+                }
+                link(url, hash);
+                evict();
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private void link(final String url, final String hash) {
+        final Long size = fetched.remove(url);
+        if (size != null) {
+            totalBytes -= size;
+        }
+        final String previous = urls.put(url, hash);
+        if (previous != null && !previous.equals(hash)) {
+            hashUrls.get(previous).remove(url);
+        }
+        hashUrls.computeIfAbsent(hash, h -> new HashSet<>()).add(url);
+    }
+
+    private static String hash(final byte[] content) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(content));
+        } catch (final NoSuchAlgorithmException e) {
+            throw new AssertionError("SHA-256 is not supported", e);
+        }
+    }
+
+    private synchronized void evict() throws IOException {
+        if (totalBytes <= maxBytes) {
+            return;
+        }
+        final Iterator<Long> urlIterator = fetched.values().iterator();
+        while (totalBytes > maxBytes && urlIterator.hasNext()) {
+            totalBytes -= urlIterator.next();
+            urlIterator.remove();
+        }
+        final Iterator<Map.Entry<String, Long>> iterator = blobs.entrySet().iterator();
+        while (totalBytes > maxBytes && iterator.hasNext()) {
+            final Map.Entry<String, Long> eldest = iterator.next();
+            Files.deleteIfExists(blob(eldest.getKey()));
+            totalBytes -= eldest.getValue();
+            iterator.remove();
+            final Set<String> evicted = hashUrls.remove(eldest.getKey());
+            if (evicted != null) {
+                urls.keySet().removeAll(evicted);
+            }
+        }
+    }
+
+    /**
+     * Saves index of the store, least recently used documents first
+     */
+    @Override
+    public synchronized void close() {
+        try (final BufferedWriter writer = Files.newBufferedWriter(directory.resolve(INDEX), StandardCharsets.UTF_8)) {
+            for (final String url : fetched.keySet()) {
+                writer.write(FETCHED + SEPARATOR + url);
+                writer.newLine();
+            }
+            for (final String hash : blobs.keySet()) {
+                for (final String url : hashUrls.getOrDefault(hash, Set.of())) {
+                    writer.write(hash + SEPARATOR + url);
+                    writer.newLine();
+                }
+            }
+        } catch (final IOException e) {
+            throw new UncheckedIOException("Cannot save cache index", e);
+        }
+    }
+}
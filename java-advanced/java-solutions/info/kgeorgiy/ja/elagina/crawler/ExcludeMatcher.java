@@ -0,0 +1,125 @@
+package info.kgeorgiy.ja.elagina.crawler;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeMap;
+
+/**
+ * Aho-Corasick automaton, that checks whether a string contains one of the given substrings.
+ * Matching costs {@code O(|text|)} regardless of the number of substrings.
+ * @author Elagina Alena
+ */
+final class ExcludeMatcher {
+    private static final int ROOT = 0;
+
+    private final char[][] keys;
+    private final int[][] next;
+    private final int[] fail;
+    private final boolean[] terminal;
+
+    /**
+     * Compiles the automaton
+     * @param substrings substrings to search for
+     */
+    ExcludeMatcher(final Collection<String> substrings) {
+        final List<Map<Character, Integer>> trie = new ArrayList<>();
+        final List<Boolean> ends = new ArrayList<>();
+        trie.add(new TreeMap<>());
+        ends.add(false);
+
+        for (final String substring : substrings) {
+            int node = ROOT;
+            for (int i = 0; i < substring.length(); i++) {
+                final int size = trie.size();
+                final int child = trie.get(node).computeIfAbsent(substring.charAt(i), c -> size);
+                if (child == size) {
+                    trie.add(new TreeMap<>());
+                    ends.add(false);
+                }
+                node = child;
+            }
+            ends.set(node, true);
+        }
+
+        final int size = trie.size();
+        keys = new char[size][];
+        next = new int[size][];
+        fail = new int[size];
+        terminal = new boolean[size];
+        for (int node = 0; node < size; node++) {
+            final Map<Character, Integer> children = trie.get(node);
+            keys[node] = new char[children.size()];
+            next[node] = new int[children.size()];
+            int i = 0;
+            for (final Map.Entry<Character, Integer> e : children.entrySet()) {
+                keys[node][i] = e.getKey();
+                next[node][i++] = e.getValue();
+            }
+            terminal[node] = ends.get(node);
+        }
+
+        final Queue<Integer> queue = new ArrayDeque<>();
+        queue.add(ROOT);
+        while (!queue.isEmpty()) {
+            final int node = queue.poll();
+            for (int i = 0; i < keys[node].length; i++) {
+                final int child = next[node][i];
+                fail[child] = node == ROOT ? ROOT : step(fail[node], keys[node][i]);
+                terminal[child] |= terminal[fail[child]];
+                queue.add(child);
+            }
+        }
+    }
+
+    private int transition(final int node, final char c) {
+        final char[] chars = keys[node];
+        int l = 0;
+        int r = chars.length - 1;
+        while (l <= r) {
+            final int m = (l + r) >>> 1;
+            if (chars[m] < c) {
+                l = m + 1;
+            } else if (chars[m] > c) {
+                r = m - 1;
+            } else {
+                return next[node][m];
+            }
+        }
+        return -1;
+    }
+
+    private int step(int node, final char c) {
+        while (true) {
+            final int child = transition(node, c);
+            if (child >= 0) {
+                return child;
+            }
+            if (node == ROOT) {
+                return ROOT;
+            }
+            node = fail[node];
+        }
+    }
+
+    /**
+     * @param text string to check
+     * @return {@code true} if {@code text} contains one of the substrings
+     */
+    boolean matches(final String text) {
+        int node = ROOT;
+        if (terminal[node]) {
+            return true;
+        }
+        for (int i = 0; i < text.length(); i++) {
+            node = step(node, text.charAt(i));
+            if (terminal[node]) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
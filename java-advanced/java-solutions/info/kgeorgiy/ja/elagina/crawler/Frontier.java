@@ -0,0 +1,84 @@
+package info.kgeorgiy.ja.elagina.crawler;
+
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.IntStream;
+
+/**
+ * Thread-safe priority queue of pages to download.
+ * Pages are spread over independently locked stripes, so that producers rarely contend,
+ * and {@link #poll()} takes the best head among the stripes.
+ * @author Elagina Alena
+ */
+final class Frontier {
+    private static final Comparator<Entry> ORDER = Comparator.comparingDouble(Entry::score).reversed()
+            .thenComparingInt(Entry::depth);
+
+    private final PriorityQueue<Entry>[] stripes;
+
+    /**
+     * Page in the frontier
+     * @param url URL of the page
+     * @param depth depth of the page
+     * @param score score of the page
+     */
+    record Entry(String url, int depth, double score) {}
+
+    /**
+     * @param stripes number of stripes
+     */
+    @SuppressWarnings("unchecked")
+    Frontier(final int stripes) {
+        this.stripes = IntStream.range(0, stripes)
+                .mapToObj(i -> new PriorityQueue<>(ORDER))
+                .toArray(PriorityQueue[]::new);
+    }
+
+    void add(final Entry entry) {
+        final PriorityQueue<Entry> stripe = stripes[ThreadLocalRandom.current().nextInt(stripes.length)];
+        synchronized (stripe) {
+            stripe.add(entry);
+        }
+    }
+
+    /**
+     * @return one of the best pages, or {@code null} if frontier is empty
+     */
+    Entry poll() {
+        while (true) {
+            PriorityQueue<Entry> best = null;
+            Entry head = null;
+            for (final PriorityQueue<Entry> stripe : stripes) {
+                final Entry candidate;
+                synchronized (stripe) {
+                    candidate = stripe.peek();
+                }
+                if (candidate != null && (head == null || ORDER.compare(candidate, head) < 0)) {
+                    best = stripe;
+                    head = candidate;
+                }
+            }
+            if (best == null) {
+                return null;
+            }
+            synchronized (best) {
+                final Entry entry = best.poll();
+                if (entry != null) {
+                    return entry;
+                }
+            }
+        }
+    }
+
+    boolean isEmpty() {
+        for (final PriorityQueue<Entry> stripe : stripes) {
+            synchronized (stripe) {
+                if (!stripe.isEmpty()) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+}
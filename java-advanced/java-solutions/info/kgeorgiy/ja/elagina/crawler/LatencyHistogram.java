@@ -0,0 +1,94 @@
+package info.kgeorgiy.ja.elagina.crawler;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Thread-safe latency histogram with power-of-two buckets.
+ * Recording is an atomic increment of a bucket and an addition to a striped sum, without locks,
+ * so it can stay enabled in production.
+ * @author Elagina Alena
+ */
+public final class LatencyHistogram {
+    private static final int BUCKETS = Long.SIZE + 1;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final LongAdder totalNanos = new LongAdder();
+
+    /**
+     * Creates empty histogram
+     */
+    public LatencyHistogram() {}
+
+    /**
+     * Records one measurement
+     * @param nanos measured latency in nanoseconds
+     */
+    public void record(final long nanos) {
+        final long value = Math.max(nanos, 0);
+        buckets.incrementAndGet(Long.SIZE - Long.numberOfLeadingZeros(value));
+        totalNanos.add(value);
+    }
+
+    /**
+     * @return current state of the histogram
+     */
+    public Snapshot snapshot() {
+        final long[] counts = new long[BUCKETS];
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = buckets.get(i);
+            count += counts[i];
+        }
+        return new Snapshot(counts, count, totalNanos.sum());
+    }
+
+    /**
+     * State of a histogram at some moment
+     * @param buckets number of measurements in {@code [2^(i-1), 2^i)} nanoseconds for each {@code i}
+     * @param count number of measurements
+     * @param totalNanos sum of all measurements
+     */
+    public record Snapshot(long[] buckets, long count, long totalNanos) {
+        /**
+         * @param buckets number of measurements in {@code [2^(i-1), 2^i)} nanoseconds for each {@code i}
+         * @param count number of measurements
+         * @param totalNanos sum of all measurements
+         */
+        public Snapshot {
+            buckets = buckets.clone();
+        }
+
+        /**
+         * @return copy of the numbers of measurements in {@code [2^(i-1), 2^i)} nanoseconds for each {@code i}
+         */
+        @Override
+        public long[] buckets() {
+            return buckets.clone();
+        }
+
+        /**
+         * @return mean latency in milliseconds, {@code 0} if there are no measurements
+         */
+        public double meanMillis() {
+            return count == 0 ? 0 : (double) totalNanos / count / TimeUnit.MILLISECONDS.toNanos(1);
+        }
+
+        /**
+         * @param quantile quantile in {@code [0, 1]}
+         * @return upper bound of the bucket, containing given quantile, in milliseconds
+         */
+        public double quantileMillis(final double quantile) {
+            final long rank = (long) Math.ceil(quantile * count);
+            long seen = 0;
+            for (int i = 0; i < buckets.length; i++) {
+                seen += buckets[i];
+                if (seen >= rank && seen > 0) {
+                    return Math.pow(2, i) / TimeUnit.MILLISECONDS.toNanos(1);
+                }
+            }
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package info.kgeorgiy.ja.elagina.crawler;
+
+/**
+ * Value of a page for best-first crawling, pages with higher scores are downloaded first
+ * @author Elagina Alena
+ */
+@FunctionalInterface
+public interface UrlScorer {
+    /**
+     * @param url URL of the page
+     * @param depth depth of the page, start page has depth {@code 1}
+     * @return score of the page
+     */
+    double score(String url, int depth);
+
+    /**
+     * @return scorer, that prefers pages closer to the start page
+     */
+    static UrlScorer byDepth() {
+        return (url, depth) -> -depth;
+    }
+}
@@ -2,7 +2,10 @@ package info.kgeorgiy.ja.elagina.crawler;
 
 import info.kgeorgiy.java.advanced.crawler.*;
 
+import javax.management.JMException;
+import javax.management.ObjectName;
 import java.io.*;
+import java.lang.management.ManagementFactory;
 import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URLConnection;
@@ -12,18 +15,42 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.*;
 import java.util.concurrent.*;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 
 /**
  * Thread-safe class, that recursively crawls sites
  * @author Elagina Alena
  */
 public class WebCrawler implements NewCrawler {
+    private static final AtomicInteger IDS = new AtomicInteger();
+    private static final Path CACHE = Path.of(".crawler-cache");
+    private static final long CACHE_SIZE = 256L << 20;
+
     private final Downloader downloader;
     private final ExecutorService downloaders;
     private final ExecutorService extractors;
+    private final Semaphore downloadPermits;
     private final int perHost;
+    private final int parallelism;
+
+    private final ConcurrentMap<String, HostQueue> hosts = new ConcurrentHashMap<>();
+    private final CrawlStats stats = new CrawlStats();
+    private final ObjectName statsName;
+
+    /**
+     * Threads on which pages are downloaded
+     */
+    public enum Mode {
+        /**
+         * Fixed pool of {@code downloaders} platform threads
+         */
+        PLATFORM,
+        /**
+         * Virtual thread per download, at most {@code downloaders} downloads run at the same time
+         */
+        VIRTUAL
+    }
 
     /**
      * @param downloader allows you to download pages and extract links from them
@@ -32,10 +59,43 @@ public class WebCrawler implements NewCrawler {
      * @param perHost the maximum number of pages loaded simultaneously from a single host
      */
     public WebCrawler(final Downloader downloader, final int downloaders, final int extractors, final int perHost) {
+        this(downloader, downloaders, extractors, perHost, Mode.PLATFORM);
+    }
+
+    /**
+     * @param downloader allows you to download pages and extract links from them
+     * @param downloaders the maximum number of pages loaded at the same time
+     * @param extractors the maximum number of pages from which links are extracted at the same time
+     * @param perHost the maximum number of pages loaded simultaneously from a single host
+     * @param mode threads on which pages are downloaded
+     */
+    public WebCrawler(final Downloader downloader, final int downloaders, final int extractors, final int perHost,
+                      final Mode mode) {
         this.downloader = downloader;
-        this.downloaders = Executors.newFixedThreadPool(downloaders);
+        if (mode == Mode.VIRTUAL) {
+            this.downloaders = Executors.newVirtualThreadPerTaskExecutor();
+            this.downloadPermits = new Semaphore(downloaders);
+        } else {
+            this.downloaders = Executors.newFixedThreadPool(downloaders);
+            this.downloadPermits = null;
+        }
         this.extractors = Executors.newFixedThreadPool(extractors);
         this.perHost = perHost;
+        this.parallelism = downloaders;
+
+        try {
+            statsName = new ObjectName(WebCrawler.class.getPackageName() + ":type=WebCrawler,id=" + IDS.incrementAndGet());
+            ManagementFactory.getPlatformMBeanServer().registerMBean(stats, statsName);
+        } catch (final JMException e) {
+            throw new IllegalStateException("Cannot register crawl statistics", e);
+        }
+    }
+
+    /**
+     * @return statistics of all crawls made by this crawler, also available through JMX
+     */
+    public CrawlStats stats() {
+        return stats;
     }
 
 
@@ -45,29 +105,47 @@ public class WebCrawler implements NewCrawler {
      * @throws IOException f an error occurred
      */
     public static void main(final String[] args) throws IOException {
-        if (args == null || args.length < 1 || args.length > 5) {
-            System.out.println("Usage: WebCrawler url [depth [downloaders [extractors [perHost]]]]");
+        if (args == null || args.length < 1 || args.length > 6) {
+            System.out.println("Usage: WebCrawler url [depth [downloaders [extractors [perHost [progressSeconds]]]]]");
             return;
         }
-        CachingDownloader cachingDownloader = new CachingDownloader(0);
         String url = args[0];
         int depth = args.length > 1 ? Integer.parseInt(args[1]) : 1;
         int downloaders = args.length > 2 ? Integer.parseInt(args[2]) : 1;
         int extractors = args.length > 3 ? Integer.parseInt(args[3]) : 1;
-        int perHost = Integer.parseInt(args[4]);
+        int perHost = args.length > 4 ? Integer.parseInt(args[4]) : downloaders;
+        int progressSeconds = args.length > 5 ? Integer.parseInt(args[5]) : 0;
 
-        WebCrawler webCrawler = new WebCrawler(cachingDownloader, downloaders, extractors, perHost);
-        Result result = webCrawler.download(url, depth);
+        try (DiskCachingDownloader cachingDownloader = new DiskCachingDownloader(new CachingDownloader(0), CACHE, CACHE_SIZE);
+             WebCrawler webCrawler = new WebCrawler(cachingDownloader, downloaders, extractors, perHost)) {
+            ScheduledExecutorService progress = null;
+            if (progressSeconds > 0) {
+                progress = Executors.newSingleThreadScheduledExecutor();
+                progress.scheduleAtFixedRate(() -> printProgress(webCrawler.stats().snapshot()),
+                        progressSeconds, progressSeconds, TimeUnit.SECONDS);
+            }
+            Result result;
+            try {
+                result = webCrawler.download(url, depth);
+            } finally {
+                if (progress != null) {
+                    progress.shutdownNow();
+                }
+            }
 
-        System.out.println("Downloaded URLs:");
-        result.getDownloaded().forEach(System.out::println);
+            System.out.println("Downloaded URLs:");
+            result.getDownloaded().forEach(System.out::println);
 
-        System.out.println("Errors:");
-        result.getErrors().forEach((u, error) -> System.out.println(url + " - " + error.getMessage()));
-
-        webCrawler.close();
+            System.out.println("Errors:");
+            result.getErrors().forEach((u, error) -> System.out.println(url + " - " + error.getMessage()));
+        }
+    }
 
-}
+    private static void printProgress(final CrawlStats.Snapshot snapshot) {
+        System.out.printf("%d pages (%.1f/s), queued: %d downloads, %d extractions, %d per-host, %d errors%n",
+                snapshot.pages(), snapshot.pagesPerSecond(), snapshot.downloadQueue(), snapshot.extractQueue(),
+                snapshot.hostQueue(), snapshot.errorCount());
+    }
 
     /**
      * Completes all auxiliary threads
@@ -76,6 +154,10 @@ public class WebCrawler implements NewCrawler {
     public void close() {
         downloaders.close();
         extractors.close();
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(statsName);
+        } catch (final JMException ignored) {
+        }
     }
 
     /**
@@ -85,49 +167,259 @@ public class WebCrawler implements NewCrawler {
      */
     @Override
     public Result download(final String url, final int depth, final Set<String> excludes) {
-        Set<String> currentLayer = new HashSet<>(Set.of(url));
-        final Set<String> alreadyProcessed = new HashSet<>();
-        final List<String> downloaded = new CopyOnWriteArrayList<>();
-        final Map<String, IOException> errors = new ConcurrentHashMap<>();
-
-        for (int i = 1; i <= depth; i++) {
-            final int index = i;
-            currentLayer = currentLayer.stream()
-                    .filter(alreadyProcessed::add)
-                    .filter(u -> excludes.stream().noneMatch(u::contains))
-                    .<Future<Future<List<String>>>>map(currentUrl -> downloaders.submit(() -> {
-                        try {
-                            final Document document = downloader.download(currentUrl);
-                            downloaded.add(currentUrl);
-
-                            if (index == depth || document == null) {
-                                return CompletableFuture.completedFuture(List.of());
-                            }
-
-                            return extractors.submit(document::extractLinks);
+        final Crawl crawl = new Crawl(new ExcludeMatcher(excludes));
+        Set<String> currentLayer = crawl.matcher.matches(url) ? Set.of() : Set.of(url);
 
-                        } catch (final IOException e) {
-                            errors.put(currentUrl, e);
-                            return CompletableFuture.completedFuture(List.of());
-                        }
-                    }))
-                    .toList().stream()
-                    .flatMap(f -> runFutureUnsafe(() -> f.get().get().stream(), Stream.of()))
-                    .collect(Collectors.toSet());
+        for (int i = 1; i <= depth && !currentLayer.isEmpty(); i++) {
+            currentLayer = crawl.layer(currentLayer, i < depth);
         }
 
-        return new Result(downloaded, errors);
+        return new Result(crawl.downloaded, crawl.errors);
     }
 
-    private interface UnsafeSupplier<T> {
-        T run() throws InterruptedException, ExecutionException;
+    /**
+     * Downloads pages in order of their scores, instead of breadth-first order
+     * @param url start URL.
+     * @param depth download depth.
+     * @param excludes URLs containing one of given substrings are ignored.
+     * @param scorer value of the pages
+     * @param budget the maximum number of pages to download
+     * @return download result.
+     */
+    public Result download(final String url, final int depth, final Set<String> excludes,
+                           final UrlScorer scorer, final int budget) {
+        final Crawl crawl = new Crawl(new ExcludeMatcher(excludes));
+        if (depth > 0 && !crawl.matcher.matches(url)) {
+            crawl.bestFirst(url, depth, scorer, budget);
+        }
+        return new Result(crawl.downloaded, crawl.errors);
     }
 
-    private <T> T runFutureUnsafe(final UnsafeSupplier<T> future, final T defaultValue) {
+    private Document fetch(final String host, final String url) throws IOException {
+        if (downloadPermits == null) {
+            return timedFetch(host, url);
+        }
+        stats.downloadQueue().incrementAndGet();
+        downloadPermits.acquireUninterruptibly();
+        stats.downloadQueue().decrementAndGet();
         try {
-            return future.run();
-        } catch (final InterruptedException | ExecutionException ignored) {
-            return defaultValue;
+            return timedFetch(host, url);
+        } finally {
+            downloadPermits.release();
+        }
+    }
+
+    private Document timedFetch(final String host, final String url) throws IOException {
+        final long start = System.nanoTime();
+        final Document document = downloader.download(url);
+        stats.downloaded(host, System.nanoTime() - start);
+        return document;
+    }
+
+    /**
+     * State of a single {@code download} call
+     */
+    private class Crawl {
+        private final ExcludeMatcher matcher;
+        private final Set<String> processed = ConcurrentHashMap.newKeySet();
+        private final Map<String, Integer> depths = new ConcurrentHashMap<>();
+        private final List<String> downloaded = new CopyOnWriteArrayList<>();
+        private final Map<String, IOException> errors = new ConcurrentHashMap<>();
+
+        private Crawl(final ExcludeMatcher matcher) {
+            this.matcher = matcher;
+        }
+
+        private int inFlight;
+
+        private Set<String> layer(final Set<String> layer, final boolean extract) {
+            final Set<String> next = ConcurrentHashMap.newKeySet();
+            final List<String> urls = layer.stream().filter(processed::add).toList();
+            final CountDownLatch pending = new CountDownLatch(urls.size());
+            urls.forEach(url -> visit(url, extract, next::add, pending::countDown));
+            try {
+                pending.await();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return next;
+        }
+
+        private void bestFirst(final String url, final int depth, final UrlScorer scorer, final int budget) {
+            final Frontier frontier = new Frontier(Runtime.getRuntime().availableProcessors());
+            offer(frontier, scorer, url, 1);
+            try {
+                for (int left = budget; left > 0; left--) {
+                    final Frontier.Entry entry = next(frontier);
+                    if (entry == null) {
+                        break;
+                    }
+                    visit(entry.url(), entry.depth() < depth,
+                            link -> offer(frontier, scorer, link, entry.depth() + 1),
+                            this::finished);
+                }
+                synchronized (this) {
+                    while (inFlight > 0) {
+                        wait();
+                    }
+                }
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        /**
+         * Adds the page to the frontier, unless it is already downloaded or queued at the same or smaller depth.
+         * A page found by a shorter path is queued again, its deeper entry is skipped by {@link #next}
+         */
+        private void offer(final Frontier frontier, final UrlScorer scorer, final String url, final int depth) {
+            if (processed.contains(url)) {
+                return;
+            }
+            final Integer known = depths.get(url);
+            if ((known == null || depth < known) && depths.merge(url, depth, Math::min) == depth) {
+                frontier.add(new Frontier.Entry(url, depth, scorer.score(url, depth)));
+            }
+        }
+
+        /**
+         * Waits for a free download slot and takes the best page from the frontier.
+         * Entries of pages, that are already taken or queued at a smaller depth, are skipped
+         * @return page to download, or {@code null} if there are no more pages
+         */
+        private synchronized Frontier.Entry next(final Frontier frontier) throws InterruptedException {
+            while (true) {
+                while (inFlight >= parallelism || inFlight > 0 && frontier.isEmpty()) {
+                    wait();
+                }
+                final Frontier.Entry entry = frontier.poll();
+                if (entry == null) {
+                    return null;
+                }
+                if (entry.depth() == depths.get(entry.url()) && processed.add(entry.url())) {
+                    inFlight++;
+                    return entry;
+                }
+            }
+        }
+
+        private synchronized void finished() {
+            inFlight--;
+            notifyAll();
+        }
+
+        /**
+         * Downloads the page and passes its links to {@code links}
+         * @param done called once, when the page is processed
+         */
+        private void visit(final String url, final boolean extract, final Consumer<String> links,
+                           final Runnable done) {
+            final String host;
+            try {
+                host = URLUtils.getHost(url);
+            } catch (final MalformedURLException e) {
+                stats.error(e);
+                errors.put(url, e);
+                done.run();
+                return;
+            }
+            submit(host, () -> {
+                boolean extracting = false;
+                try {
+                    final Document document = fetch(host, url);
+                    downloaded.add(url);
+                    if (extract && document != null) {
+                        stats.extractQueue().incrementAndGet();
+                        extractors.submit(() -> {
+                            stats.extractQueue().decrementAndGet();
+                            try {
+                                final long start = System.nanoTime();
+                                final List<String> extracted = document.extractLinks();
+                                stats.extracted(host, System.nanoTime() - start);
+                                extracted.stream()
+                                        .filter(link -> !matcher.matches(link))
+                                        .forEach(links);
+                            } catch (final IOException e) {
+                                stats.error(e);
+                            } finally {
+                                done.run();
+                            }
+                        });
+                        extracting = true;
+                    }
+                } catch (final IOException e) {
+                    stats.error(e);
+                    errors.put(url, e);
+                } finally {
+                    if (!extracting) {
+                        done.run();
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Downloads of a single host, at most {@code perHost} of them are submitted at the same time
+     */
+    private void submit(final String host, final Runnable task) {
+        HostQueue queue;
+        do {
+            queue = hosts.computeIfAbsent(host, HostQueue::new);
+        } while (!queue.submit(task));
+    }
+
+    /**
+     * Downloads of a single host, removed from {@code hosts} when it becomes idle
+     */
+    private class HostQueue {
+        private final String host;
+        private final Queue<Runnable> waiting = new ArrayDeque<>();
+        private int running;
+        private boolean removed;
+
+        private HostQueue(final String host) {
+            this.host = host;
+        }
+
+        /**
+         * @return {@code false} if the queue is already removed and the task should go to a new one
+         */
+        private synchronized boolean submit(final Runnable task) {
+            if (removed) {
+                return false;
+            }
+            if (running < perHost) {
+                running++;
+                start(task);
+            } else {
+                stats.hostQueue().incrementAndGet();
+                waiting.add(task);
+            }
+            return true;
+        }
+
+        private synchronized void finished() {
+            final Runnable task = waiting.poll();
+            if (task != null) {
+                stats.hostQueue().decrementAndGet();
+                start(task);
+            } else if (--running == 0) {
+                removed = true;
+                hosts.remove(host, this);
+            }
+        }
+
+        private void start(final Runnable task) {
+            stats.downloadQueue().incrementAndGet();
+            downloaders.submit(() -> {
+                stats.downloadQueue().decrementAndGet();
+                try {
+                    task.run();
+                } finally {
+                    finished();
+                }
+            });
         }
     }
 
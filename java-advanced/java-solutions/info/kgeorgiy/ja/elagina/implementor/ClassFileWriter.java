@@ -0,0 +1,262 @@
+package info.kgeorgiy.ja.elagina.implementor;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Writes class files of interface implementations without compiling their sources.
+ * Generated classes have the same methods as the sources, written by {@link Implementor}.
+ * Version 52 class files are written, so method bodies need no stack map frames.
+ * @author Elagina Alena
+ */
+final class ClassFileWriter {
+
+    /**
+     * Class file version
+     */
+    private static final int VERSION = 52;
+    /**
+     * Access flags of generated class and methods
+     */
+    private static final int ACC_PUBLIC = 0x0001;
+    /**
+     * Access flag of generated class for invokespecial semantics
+     */
+    private static final int ACC_SUPER = 0x0020;
+
+    /**
+     * Constant pool tags
+     */
+    private static final int UTF8 = 1, CLASS = 7, METHOD_REF = 10, NAME_AND_TYPE = 12;
+
+    /**
+     * Opcodes
+     */
+    private static final int ACONST_NULL = 0x01, ICONST_0 = 0x03, LCONST_0 = 0x09, FCONST_0 = 0x0b, DCONST_0 = 0x0e,
+            ALOAD_0 = 0x2a, IRETURN = 0xac, LRETURN = 0xad, FRETURN = 0xae, DRETURN = 0xaf, ARETURN = 0xb0,
+            RETURN = 0xb1, INVOKESPECIAL = 0xb7;
+
+    /**
+     * Constant pool entries, by their contents
+     */
+    private final Map<String, Integer> constants = new HashMap<>();
+    /**
+     * Serialized constant pool
+     */
+    private final ByteArrayOutputStream pool = new ByteArrayOutputStream();
+    /**
+     * Writer of constant pool
+     */
+    private final DataOutputStream poolOut = new DataOutputStream(pool);
+    /**
+     * Number of used constant pool slots
+     */
+    private int poolSize = 1;
+
+    /**
+     * Constructor for {@link #write}
+     */
+    private ClassFileWriter() {}
+
+    /**
+     * Writes class file of the implementation of the interface
+     * @param token Interface to be implemented
+     * @param binaryName Binary name of the implementation
+     * @return class file
+     */
+    static byte[] write(final Class<?> token, final String binaryName) {
+        try {
+            return new ClassFileWriter().writeClass(token, binaryName);
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Writes class file
+     * @param token Interface to be implemented
+     * @param binaryName Binary name of the implementation
+     * @return class file
+     * @throws IOException never, as everything is written to memory
+     */
+    private byte[] writeClass(final Class<?> token, final String binaryName) throws IOException {
+        final Map<String, Method> methods = new LinkedHashMap<>();
+        for (final Method method : token.getMethods()) {
+            methods.putIfAbsent(method.getName() + descriptor(method), method);
+        }
+
+        final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(body);
+        out.writeShort(ACC_PUBLIC | ACC_SUPER);
+        out.writeShort(classConstant(binaryName.replace('.', '/')));
+        out.writeShort(classConstant("java/lang/Object"));
+        out.writeShort(1);
+        out.writeShort(classConstant(token.getName().replace('.', '/')));
+        out.writeShort(0);
+
+        out.writeShort(methods.size() + 1);
+        final int objectInit = methodConstant("java/lang/Object", "<init>", "()V");
+        writeMethod(out, "<init>", "()V", 1, 1, new byte[]{
+                (byte) ALOAD_0,
+                (byte) INVOKESPECIAL, (byte) (objectInit >>> 8), (byte) objectInit,
+                (byte) RETURN
+        });
+        for (final Method method : methods.values()) {
+            final Class<?> type = method.getReturnType();
+            int locals = 1;
+            for (final Class<?> param : method.getParameterTypes()) {
+                locals += slots(param);
+            }
+            writeMethod(out, method.getName(), descriptor(method), Math.max(slots(type), 1), locals,
+                    returnDefaultValue(type));
+        }
+        out.writeShort(0);
+
+        final ByteArrayOutputStream result = new ByteArrayOutputStream(8 + pool.size() + body.size());
+        final DataOutputStream classFile = new DataOutputStream(result);
+        classFile.writeInt(0xCAFEBABE);
+        classFile.writeShort(0);
+        classFile.writeShort(VERSION);
+        classFile.writeShort(poolSize);
+        pool.writeTo(classFile);
+        body.writeTo(classFile);
+        return result.toByteArray();
+    }
+
+    /**
+     * Writes public method with the given code
+     * @param out Class file writer
+     * @param name Name of the method
+     * @param descriptor Descriptor of the method
+     * @param stack Maximal stack size
+     * @param locals Number of local variable slots
+     * @param code Bytecode
+     * @throws IOException never
+     */
+    private void writeMethod(final DataOutputStream out, final String name, final String descriptor,
+                             final int stack, final int locals, final byte[] code) throws IOException {
+        out.writeShort(ACC_PUBLIC);
+        out.writeShort(utf8(name));
+        out.writeShort(utf8(descriptor));
+        out.writeShort(1);
+        out.writeShort(utf8("Code"));
+        out.writeInt(12 + code.length);
+        out.writeShort(stack);
+        out.writeShort(locals);
+        out.writeInt(code.length);
+        out.write(code);
+        out.writeShort(0);
+        out.writeShort(0);
+    }
+
+    /**
+     * Returns code, that returns the default value for the corresponding type
+     * @param type The type we want the default value for
+     * @return bytecode of the method
+     */
+    private static byte[] returnDefaultValue(final Class<?> type) {
+        if (type == void.class) {
+            return new byte[]{(byte) RETURN};
+        } else if (type == long.class) {
+            return new byte[]{LCONST_0, (byte) LRETURN};
+        } else if (type == float.class) {
+            return new byte[]{FCONST_0, (byte) FRETURN};
+        } else if (type == double.class) {
+            return new byte[]{DCONST_0, (byte) DRETURN};
+        } else if (type.isPrimitive()) {
+            return new byte[]{ICONST_0, (byte) IRETURN};
+        } else {
+            return new byte[]{ACONST_NULL, (byte) ARETURN};
+        }
+    }
+
+    /**
+     * Returns number of local variable slots of a value
+     * @param type Type of the value
+     * @return number of slots
+     */
+    private static int slots(final Class<?> type) {
+        return type == void.class ? 0 : type == long.class || type == double.class ? 2 : 1;
+    }
+
+    /**
+     * Returns descriptor of the method
+     * @param method Method to describe
+     * @return method descriptor
+     */
+    private static String descriptor(final Method method) {
+        return MethodType.methodType(method.getReturnType(), method.getParameterTypes()).toMethodDescriptorString();
+    }
+
+    /**
+     * Returns index of a constant, adding it to the pool if absent
+     * @param key Unique description of the constant
+     * @param tag Tag of the constant
+     * @param first First field of a reference constant
+     * @param second Second field of a reference constant, or {@code -1}
+     * @return index in the constant pool
+     * @throws IOException never
+     */
+    private int constant(final String key, final int tag, final int first, final int second) throws IOException {
+        final Integer index = constants.get(key);
+        if (index != null) {
+            return index;
+        }
+        poolOut.writeByte(tag);
+        poolOut.writeShort(first);
+        if (second >= 0) {
+            poolOut.writeShort(second);
+        }
+        constants.put(key, poolSize);
+        return poolSize++;
+    }
+
+    /**
+     * Returns index of a string constant
+     * @param value Value of the constant
+     * @return index in the constant pool
+     * @throws IOException never
+     */
+    private int utf8(final String value) throws IOException {
+        final String key = UTF8 + ":" + value;
+        final Integer index = constants.get(key);
+        if (index != null) {
+            return index;
+        }
+        poolOut.writeByte(UTF8);
+        poolOut.writeUTF(value);
+        constants.put(key, poolSize);
+        return poolSize++;
+    }
+
+    /**
+     * Returns index of a class constant
+     * @param internalName Internal name of the class
+     * @return index in the constant pool
+     * @throws IOException never
+     */
+    private int classConstant(final String internalName) throws IOException {
+        return constant(CLASS + ":" + internalName, CLASS, utf8(internalName), -1);
+    }
+
+    /**
+     * Returns index of a method reference constant
+     * @param owner Internal name of the class, that declares the method
+     * @param name Name of the method
+     * @param descriptor Descriptor of the method
+     * @return index in the constant pool
+     * @throws IOException never
+     */
+    private int methodConstant(final String owner, final String name, final String descriptor) throws IOException {
+        final int nameAndType = constant(NAME_AND_TYPE + ":" + name + ' ' + descriptor, NAME_AND_TYPE,
+                utf8(name), utf8(descriptor));
+        return constant(METHOD_REF + ":" + owner + '.' + name + descriptor, METHOD_REF, classConstant(owner), nameAndType);
+    }
+}
@@ -5,20 +5,27 @@ import info.kgeorgiy.java.advanced.implementor.JarImpler;
 
 
 import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
 import javax.tools.ToolProvider;
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.IOException;
-import java.lang.reflect.Method;
+import java.lang.invoke.MethodHandles;
 import java.lang.reflect.Modifier;
-import java.lang.reflect.Parameter;
-import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.InvalidPathException;
 import java.nio.file.Path;
-import java.util.Arrays;
+import java.security.CodeSource;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 import java.util.jar.Attributes;
 import java.util.jar.JarOutputStream;
 import java.util.jar.Manifest;
@@ -34,18 +41,60 @@ import java.util.zip.ZipEntry;
 public class Implementor implements JarImpler {
 
     /**
-     * tabulation size
+     * Reusable buffer for generated sources
      */
-    private final int TAB_SIZE = 4;
+    private static final ThreadLocal<StringBuilder> SOURCE = ThreadLocal.withInitial(StringBuilder::new);
+
     /**
-     * tabulation string
+     * How classes of {@code .jar} files are produced
      */
-    private final String TAB = " ".repeat(TAB_SIZE);
+    public enum Mode {
+        /**
+         * Generated sources are compiled by the system Java compiler
+         */
+        SOURCE,
+        /**
+         * Class files are written directly, without sources and compiler
+         */
+        BYTECODE
+    }
 
     /**
-     * Default constructor
+     * Version of generated code, changes invalidate cached classes
      */
-    public Implementor() {}
+    private static final int VERSION = 1;
+
+    /**
+     * How classes of {@code .jar} files are produced
+     */
+    private final Mode mode;
+    /**
+     * Store of previously produced classes, {@code null} if classes are not cached
+     */
+    private final ImplementorCache cache;
+
+    /**
+     * Default constructor, that compiles generated sources
+     */
+    public Implementor() {
+        this(Mode.SOURCE);
+    }
+
+    /**
+     * @param mode how classes of {@code .jar} files are produced
+     */
+    public Implementor(final Mode mode) {
+        this(mode, null);
+    }
+
+    /**
+     * @param mode how classes of {@code .jar} files are produced
+     * @param cache store of previously produced classes, {@code null} to produce all classes
+     */
+    public Implementor(final Mode mode, final ImplementorCache cache) {
+        this.mode = mode;
+        this.cache = cache;
+    }
 
     /**
      * Creates a directory in which to put the implemented class
@@ -62,6 +111,18 @@ public class Implementor implements JarImpler {
         }
     }
 
+    /**
+     * Renders implementation of the interface into the reusable buffer
+     * @param token Interface to be implemented
+     * @return buffer with the source, valid until the next call in the same thread
+     */
+    private static StringBuilder render(Class<?> token) {
+        StringBuilder source = SOURCE.get();
+        source.setLength(0);
+        InterfaceModel.of(token).writeSource(source);
+        return source;
+    }
+
     /**
      * Write implemented interface into file
      * @param writer Write implemented interface into file
@@ -70,86 +131,12 @@ public class Implementor implements JarImpler {
      */
     private void writeInterface(BufferedWriter writer, Class<?> token) throws ImplerException {
         try {
-            // :NOTE: System.lineSep
-            writer.write(token.getPackage() + ";\n\n");
-            writer.write(String.format("public class %sImpl implements %s {\n", esc(token.getSimpleName()), esc(token.getCanonicalName())));
-            for (Method method : token.getMethods()) {
-                writeMethod(writer, method, 1);
-            }
-            writer.write("}");
+            writer.append(render(token));
         } catch (IOException e) {
             throw new ImplerException("Cannot implement this interface");
         }
     }
 
-    /**
-     * Write interface's methods into file
-     * @param writer Write interface's methods into file
-     * @param method Method to be implemented
-     * @param indent Indent from the beginning of the line
-     * @throws IOException If unable to write
-     */
-    private void writeMethod(BufferedWriter writer, Method method, int indent) throws IOException {
-        writer.write(String.format("%s public %s %s (", TAB.repeat(indent), esc(method.getReturnType().getCanonicalName()), esc(method.getName())));
-        writeMethodParameters(writer, method);
-        writer.write(") {\n");
-        writer.write(TAB.repeat(indent + 1) + "return");
-        writer.write(writeReturnDefaultValue(method.getReturnType()));
-        writer.write(";\n");
-        writer.write(TAB.repeat(indent) + "}\n\n");
-    }
-
-    /**
-     * Gets method parameters and writes them separated by commas
-     * @param writer Writes method parameters separated by commas to a file
-     * @param method The method from which you want to get the parameters
-     * @throws IOException If unable to write
-     */
-    private void writeMethodParameters(BufferedWriter writer, Method method) throws IOException {
-        Parameter[] params = method.getParameters();
-        String paramsToString = Arrays.stream(params)
-                .map(p -> String.format("%s %s", esc(p.getType().getCanonicalName()), esc(p.getName())))
-                .collect(Collectors.joining(", "));
-        writer.write(paramsToString);
-    }
-
-    /**
-     * Escape all non-ASCII symbols by unicode sequence
-     *
-     * @param seq Any non-null string
-     * @return Escaped string
-     */
-    private static String esc(final String seq) {
-        final StringBuilder b = new StringBuilder();
-
-        for (final char c : seq.toCharArray()) {
-            if (c >= 128) {
-                b.append(String.format("\\u%04X", (int) c));
-            } else {
-                b.append(c);
-            }
-        }
-
-        return b.toString();
-    }
-
-    /**
-     * Returns the default value for the corresponding type
-     * @param type The type we want the default value for
-     * @return the default value for the corresponding type
-     */
-    private String writeReturnDefaultValue(Class<?> type) {
-        if (type.equals(void.class)) {
-            return "";
-        } else if (type.equals(boolean.class)) {
-            return " false";
-        } else if (type.isPrimitive()) {
-            return " 0";
-        } else {
-            return " null";
-        }
-    }
-
     /**
      * Produces code implementing interface specified by provided token
      * @param token type token to create implementation for.
@@ -158,21 +145,10 @@ public class Implementor implements JarImpler {
      */
     @Override
     public void implement(Class<?> token, Path root) throws ImplerException {
-        if (token == null) {
-            throw new ImplerException("token cannot be null");
-        }
+        checkToken(token);
         if (root == null) {
             throw new ImplerException("root cannot be null");
         }
-        if (token.isPrimitive() || token.isArray() || token.isEnum()) {
-            throw new ImplerException("token must be interface or class");
-        }
-        if (Modifier.isPrivate(token.getModifiers())) {
-            throw new ImplerException("Cannot implement private interface");
-        }
-        if (!token.isInterface()) {
-            throw new ImplerException("Cannot implement private interface");
-        }
 
         String packageName = token.getPackageName();
         String interfaceName = token.getSimpleName() + "Impl";
@@ -193,25 +169,170 @@ public class Implementor implements JarImpler {
     }
 
     /**
-     * Compiles the class
-     * @param token The class to compile
-     * @param root root directory
-     * @param sourceFile The name of the class to compile
+     * Checks that the token can be implemented
+     * @param token type token to create implementation for.
+     * @throws ImplerException when implementation cannot be generated
+     */
+    private static void checkToken(Class<?> token) throws ImplerException {
+        if (token == null) {
+            throw new ImplerException("token cannot be null");
+        }
+        if (token.isPrimitive() || token.isArray() || token.isEnum()) {
+            throw new ImplerException("token must be interface or class");
+        }
+        if (Modifier.isPrivate(token.getModifiers())) {
+            throw new ImplerException("Cannot implement private interface");
+        }
+        if (!token.isInterface()) {
+            throw new ImplerException("Cannot implement private interface");
+        }
+    }
+
+    /**
+     * Returns binary name of the implementation of the token
+     * @param token Interface to be implemented
+     * @return name of the implementation
+     */
+    private static String implName(final Class<?> token) {
+        String name = token.getSimpleName() + "Impl";
+        return token.getPackageName().isEmpty() ? name : token.getPackageName() + "." + name;
+    }
+
+    /**
+     * Returns class path, containing all of the tokens
+     * @param tokens Interfaces to be implemented
+     * @return class path
+     * @throws ImplerException If unable to get location of a token
+     */
+    private static String classPath(final Collection<Class<?>> tokens) throws ImplerException {
+        Set<String> paths = new LinkedHashSet<>();
+        for (Class<?> token : tokens) {
+            CodeSource source = token.getProtectionDomain().getCodeSource();
+            if (source == null) {
+                continue;
+            }
+            try {
+                paths.add(Path.of(source.getLocation().toURI()).toString());
+            } catch (URISyntaxException e) {
+                throw new ImplerException("Cannot get classpath");
+            }
+        }
+        return String.join(File.pathSeparator, paths);
+    }
+
+    /**
+     * Compiles implementations of all tokens in memory by a single compilation task
+     * @param tokens Interfaces to compile implementations of
+     * @return bytecode by binary names of compiled classes
      * @throws ImplerException If unable to compile
      */
-    private void compile(Class<?> token, Path root, String sourceFile) throws ImplerException {
+    private Map<String, byte[]> compile(final Collection<Class<?>> tokens) throws ImplerException {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        if (compiler == null) {
+            throw new ImplerException("JavaCompiler not found");
+        }
+        List<JavaFileObject> sources = tokens.parallelStream()
+                .map(token -> MemoryFileManager.source(implName(token), render(token).toString()))
+                .toList();
+        List<String> options = List.of("-cp", classPath(tokens));
+        try (MemoryFileManager manager = new MemoryFileManager(
+                compiler.getStandardFileManager(null, null, StandardCharsets.UTF_8))) {
+            if (!compiler.getTask(null, manager, null, options, null, sources).call()) {
+                throw new ImplerException("Compilation failed");
+            }
+            return manager.classes();
+        } catch (IOException e) {
+            throw new ImplerException("Cannot close file manager", e);
+        }
+    }
+
+    /**
+     * Writes class files of implementations of all tokens in parallel
+     * @param tokens Interfaces to be implemented
+     * @return bytecode by binary names of classes
+     */
+    private static Map<String, byte[]> generate(final Collection<Class<?>> tokens) {
+        return tokens.parallelStream()
+                .collect(Collectors.toConcurrentMap(Implementor::implName,
+                        token -> ClassFileWriter.write(token, implName(token))));
+    }
+
+    /**
+     * Produces classes of implementations of all tokens
+     * @param tokens Interfaces to be implemented
+     * @return bytecode by binary names of classes
+     * @throws ImplerException If unable to produce a class
+     */
+    private Map<String, byte[]> produce(final Collection<Class<?>> tokens) throws ImplerException {
+        if (tokens.isEmpty()) {
+            return Map.of();
+        }
+        return mode == Mode.BYTECODE ? generate(tokens) : compile(tokens);
+    }
+
+    /**
+     * Returns key of the cached class. The key consists of the version of generated code,
+     * the way the class is produced and the source, which contains only signatures of the methods.
+     * @param token Interface to be implemented
+     * @return key of the class
+     */
+    private String cacheKey(final Class<?> token) {
+        String producer = mode == Mode.BYTECODE ? "bytecode" : "javac " + Runtime.version();
+        return "Implementor " + VERSION + " " + producer + "\n" + render(token);
+    }
+
+    /**
+     * Returns classes of implementations of all tokens, producing only classes missing in the cache
+     * @param tokens Interfaces to be implemented
+     * @return bytecode by binary names of classes
+     * @throws ImplerException If unable to produce a class or to access the cache
+     */
+    private Map<String, byte[]> classes(final Collection<Class<?>> tokens) throws ImplerException {
+        if (cache == null) {
+            return produce(tokens);
+        }
         try {
-            JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
-            if (compiler == null) {
-                throw new ImplerException("JavaCompiler not found");
+            Map<String, byte[]> classes = new HashMap<>();
+            Map<Class<?>, String> missing = new LinkedHashMap<>();
+            for (Class<?> token : tokens) {
+                String key = cacheKey(token);
+                byte[] cached = cache.get(key);
+                if (cached != null) {
+                    classes.put(implName(token), cached);
+                } else {
+                    missing.put(token, key);
+                }
             }
-            URI uri = token.getProtectionDomain().getCodeSource().getLocation().toURI();
-            int exitCode = compiler.run(null, null, null, "-cp", Path.of(uri).toString(), root.resolve(sourceFile + ".java").toString());
-            if (exitCode != 0) {
-                throw new ImplerException("Nonzero compiler exit code : " + exitCode);
+
+            Map<String, byte[]> produced = produce(missing.keySet());
+            for (Map.Entry<Class<?>, String> e : missing.entrySet()) {
+                cache.put(e.getValue(), produced.get(implName(e.getKey())));
             }
-        } catch (URISyntaxException e) {
-            throw new ImplerException("Cannot get classpath");
+            classes.putAll(produced);
+            return classes;
+        } catch (IOException e) {
+            throw new ImplerException("Cannot access class cache", e);
+        }
+    }
+
+    /**
+     * Defines implementation of the interface without compiling its source.
+     * The implementation is written directly as a class file
+     * and defined in the package of the lookup class.
+     * @param token type token to create implementation for.
+     * @param lookup lookup with package access to the package of the token
+     * @return implementation of the interface
+     * @throws ImplerException when implementation cannot be generated or defined
+     */
+    public Class<?> implementClass(final Class<?> token, final MethodHandles.Lookup lookup) throws ImplerException {
+        checkToken(token);
+        if (!lookup.lookupClass().getPackageName().equals(token.getPackageName())) {
+            throw new ImplerException("Lookup must be in package " + token.getPackageName());
+        }
+        try {
+            return lookup.defineClass(ClassFileWriter.write(token, implName(token)));
+        } catch (IllegalAccessException | LinkageError e) {
+            throw new ImplerException("Cannot define implementation of " + token.getCanonicalName(), e);
         }
     }
 
@@ -225,32 +346,40 @@ public class Implementor implements JarImpler {
     // :NOTE: inherit doc
     @Override
     public void implementJar(final Class<?> token, final Path jarFile) throws ImplerException {
-        Path root = Path.of(".");
-        Path temp;
-
-        try {
-            temp = Files.createTempDirectory(root, null);
-            implement(token, temp);
+        implementJar(List.of(token), jarFile);
+    }
 
-            String sourceFile = Path.of(token.getPackage().getName().replace('.', File.separatorChar))
-                    .resolve(token.getSimpleName() + "Impl").toString();
-            Path out = temp.resolve(sourceFile + ".class");
+    /**
+     * Produces single {@code .jar} file implementing all interfaces specified by provided tokens.
+     * Sources are generated in parallel and compiled by a single compilation task,
+     * or class files are written directly in {@link Mode#BYTECODE} mode.
+     * All sources and classes are kept in memory,
+     * classes found in the {@link ImplementorCache cache} are not produced again.
+     * @param tokens type tokens to create implementations for.
+     * @param jarFile target <var>.jar</var> file.
+     * @throws ImplerException when any of implementations cannot be generated
+     */
+    public void implementJar(final Collection<Class<?>> tokens, final Path jarFile) throws ImplerException {
+        Set<String> entries = new LinkedHashSet<>();
+        for (Class<?> token : tokens) {
+            checkToken(token);
+            if (!entries.add(implName(token))) {
+                throw new ImplerException("Duplicate implementation " + implName(token));
+            }
+        }
 
-            compile(token, temp, sourceFile);
+        Map<String, byte[]> classes = classes(tokens);
 
-            Manifest manifest = new Manifest();
-            manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
-            try (JarOutputStream stream = new JarOutputStream(Files.newOutputStream(jarFile), manifest)) {
-                ZipEntry zipEntry = new ZipEntry(sourceFile.replace(File.separatorChar, '/') + ".class");
-                stream.putNextEntry(zipEntry);
-                Files.copy(out, stream);
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        try (JarOutputStream stream = new JarOutputStream(Files.newOutputStream(jarFile), manifest)) {
+            for (String entry : entries) {
+                stream.putNextEntry(new ZipEntry(entry.replace('.', '/') + ".class"));
+                stream.write(classes.get(entry));
                 stream.closeEntry();
-            } catch (IOException e) {
-                throw new ImplerException("Failed to write to jar file", e);
             }
-
         } catch (IOException e) {
-            throw new ImplerException("Cannot create temporary directory", e);
+            throw new ImplerException("Failed to write to jar file", e);
         }
     }
 
@@ -0,0 +1,391 @@
+package info.kgeorgiy.ja.elagina.implementor;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Thread-safe persistent store of generated sources and classes, shared by runs of {@link Implementor}.
+ * Values are kept in files named by SHA-256 hashes of their keys.
+ * The index of stored values is an open addressing hash table in a memory-mapped file,
+ * so opening the store and looking values up does not read the whole index.
+ * Least recently used values are evicted when the store exceeds its size limit.
+ * The index file only grows in place and is never replaced or truncated, so its mappings stay valid.
+ * The store is locked while it is open, so other processes wait until it is closed.
+ * @author Elagina Alena
+ */
+public final class ImplementorCache implements AutoCloseable {
+    /**
+     * Name of the index file
+     */
+    private static final String INDEX = "index";
+    /**
+     * Prefix of temporary files of the store
+     */
+    private static final String TEMP_PREFIX = "value-";
+    /**
+     * Length of names of value files
+     */
+    private static final int NAME_LENGTH = 64;
+    /**
+     * First bytes of the index file
+     */
+    private static final int MAGIC = 0x494D5043;
+    /**
+     * Number of slots in a new index
+     */
+    private static final int INITIAL_CAPACITY = 1024;
+
+    /**
+     * Header offsets: magic, number of slots, number of used and removed slots, total size, access clock
+     */
+    private static final int CAPACITY = 4, OCCUPIED = 8, TOTAL = 16, CLOCK = 24, HEADER = 32;
+    /**
+     * Slot layout: hash of the key, size of the value (at least one byte), last access time
+     */
+    private static final int KEY = 32, SIZE = 32, USED = 40, SLOT = 48;
+    /**
+     * Sizes of free and removed slots
+     */
+    private static final long EMPTY = 0, REMOVED = -1;
+
+    /**
+     * Directory of the store
+     */
+    private final Path directory;
+    /**
+     * Maximum total size of stored values
+     */
+    private final long maxBytes;
+    /**
+     * Channel of the index file, exclusively locked until the store is closed
+     */
+    private final FileChannel channel;
+    /**
+     * Mapped index file
+     */
+    private MappedByteBuffer index;
+
+    /**
+     * @param directory directory of the store, created if absent
+     * @param maxBytes maximum total size of stored values
+     * @throws IOException if the store cannot be opened
+     */
+    public ImplementorCache(final Path directory, final long maxBytes) throws IOException {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+
+        Files.createDirectories(directory);
+        channel = FileChannel.open(directory.resolve(INDEX),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            channel.lock();
+            open();
+        } catch (final IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Maps the index file, replacing missing or damaged index by an empty one
+     * @throws IOException if the index cannot be read or written
+     */
+    private void open() throws IOException {
+        final long size = channel.size();
+        if (size >= HEADER) {
+            index = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            if (index.getInt(0) == MAGIC && capacity() > 0 && size >= HEADER + (long) capacity() * SLOT) {
+                return;
+            }
+        }
+        reset(INITIAL_CAPACITY);
+        index.putInt(0, MAGIC);
+        deleteUnlisted();
+    }
+
+    /**
+     * Deletes values and temporary files of the store, as the index lists no values after it is reset
+     * @throws IOException if a file cannot be deleted
+     */
+    private void deleteUnlisted() throws IOException {
+        try (final Stream<Path> files = Files.list(directory)) {
+            for (final Path file : (Iterable<Path>) files::iterator) {
+                final String name = file.getFileName().toString();
+                if ((isHash(name) || name.startsWith(TEMP_PREFIX)) && Files.isRegularFile(file)) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+    }
+
+    /**
+     * Checks whether the name may be a name of a value file, so that other files of the directory are kept
+     * @param name name of a file
+     * @return {@code true} for hexadecimal names of key hashes
+     */
+    private static boolean isHash(final String name) {
+        return name.length() == NAME_LENGTH
+                && name.chars().allMatch(c -> '0' <= c && c <= '9' || 'a' <= c && c <= 'f');
+    }
+
+    /**
+     * Returns stored value
+     * @param key key of the value
+     * @return stored value, {@code null} if absent
+     * @throws IOException if the value cannot be read
+     */
+    public byte[] get(final String key) throws IOException {
+        final byte[] hash = hash(key);
+        synchronized (this) {
+            final int slot = find(hash);
+            if (slot < 0) {
+                return null;
+            }
+            touch(slot);
+        }
+        try {
+            return Files.readAllBytes(blob(hash));
+        } catch (final NoSuchFileException e) {
+            synchronized (this) {
+                final int slot = find(hash);
+                if (slot >= 0 && Files.notExists(blob(hash))) {
+                    remove(slot);
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Stores value, replacing previous value of the key
+     * @param key key of the value
+     * @param value value to store
+     * @throws IOException if the value cannot be written
+     */
+    public void put(final String key, final byte[] value) throws IOException {
+        final byte[] hash = hash(key);
+        final Path temp = Files.createTempFile(directory, TEMP_PREFIX, null);
+        Files.write(temp, value);
+
+        synchronized (this) {
+            Files.move(temp, blob(hash), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            if (2 * (index.getInt(OCCUPIED) + 1) > capacity()) {
+                rehash();
+            }
+            int slot = find(hash);
+            if (slot >= 0) {
+                index.putLong(TOTAL, index.getLong(TOTAL) - size(slot));
+            } else {
+                slot = -slot - 1;
+                if (size(slot) == EMPTY) {
+                    index.putInt(OCCUPIED, index.getInt(OCCUPIED) + 1);
+                }
+                index.put(offset(slot), hash);
+            }
+            final long size = Math.max(value.length, 1);
+            index.putLong(offset(slot) + SIZE, size);
+            index.putLong(TOTAL, index.getLong(TOTAL) + size);
+            touch(slot);
+            evict();
+        }
+    }
+
+    /**
+     * Returns number of slots in the index
+     * @return capacity of the index
+     */
+    private int capacity() {
+        return index.getInt(CAPACITY);
+    }
+
+    /**
+     * Returns offset of the slot in the index
+     * @param slot number of the slot
+     * @return offset
+     */
+    private static int offset(final int slot) {
+        return HEADER + slot * SLOT;
+    }
+
+    /**
+     * Returns size of the value in the slot
+     * @param slot number of the slot
+     * @return size, {@link #EMPTY} or {@link #REMOVED}
+     */
+    private long size(final int slot) {
+        return index.getLong(offset(slot) + SIZE);
+    }
+
+    /**
+     * Finds slot of the key
+     * @param hash hash of the key
+     * @return slot of the key or {@code -(slot for insertion) - 1}
+     */
+    private int find(final byte[] hash) {
+        final int capacity = capacity();
+        final ByteBuffer key = ByteBuffer.wrap(hash);
+        int slot = Math.floorMod(key.getInt(0), capacity);
+        int free = -1;
+        for (int i = 0; i < capacity; i++, slot = (slot + 1) % capacity) {
+            final long size = size(slot);
+            if (size == EMPTY) {
+                return -(free >= 0 ? free : slot) - 1;
+            } else if (size == REMOVED) {
+                if (free < 0) {
+                    free = slot;
+                }
+            } else if (index.slice(offset(slot), KEY).equals(key)) {
+                return slot;
+            }
+        }
+        return -free - 1;
+    }
+
+    /**
+     * Marks the slot as recently used
+     * @param slot number of the slot
+     */
+    private void touch(final int slot) {
+        final long clock = index.getLong(CLOCK) + 1;
+        index.putLong(CLOCK, clock);
+        index.putLong(offset(slot) + USED, clock);
+    }
+
+    /**
+     * Removes value in the slot
+     * @param slot number of the slot
+     * @throws IOException if the value cannot be deleted
+     */
+    private void remove(final int slot) throws IOException {
+        final byte[] hash = new byte[KEY];
+        index.get(offset(slot), hash);
+        Files.deleteIfExists(blob(hash));
+        index.putLong(TOTAL, index.getLong(TOTAL) - size(slot));
+        index.putLong(offset(slot) + SIZE, REMOVED);
+    }
+
+    /**
+     * Returns slots of stored values
+     * @return used slots
+     */
+    private List<Integer> used() {
+        final List<Integer> used = new ArrayList<>();
+        for (int slot = 0; slot < capacity(); slot++) {
+            if (size(slot) > 0) {
+                used.add(slot);
+            }
+        }
+        return used;
+    }
+
+    /**
+     * Removes least recently used values, until the store fits into its size limit
+     * @throws IOException if a value cannot be deleted
+     */
+    private void evict() throws IOException {
+        if (index.getLong(TOTAL) <= maxBytes) {
+            return;
+        }
+        final List<Integer> used = used();
+        used.sort(Comparator.comparingLong(slot -> index.getLong(offset(slot) + USED)));
+        for (int i = 0; i < used.size() && index.getLong(TOTAL) > maxBytes; i++) {
+            remove(used.get(i));
+        }
+    }
+
+    /**
+     * Rebuilds the index without removed slots, growing it if it is half full.
+     * The index is marked damaged while it is rebuilt, so an interrupted rebuild is reset on the next open
+     * @throws IOException if the index cannot be written
+     */
+    private void rehash() throws IOException {
+        final List<Integer> used = used();
+        final ByteBuffer entries = ByteBuffer.allocate(used.size() * SLOT);
+        for (final int slot : used) {
+            entries.put(index.slice(offset(slot), SLOT));
+        }
+        final long total = index.getLong(TOTAL);
+        final long clock = index.getLong(CLOCK);
+
+        reset(4 * used.size() > capacity() ? 2 * capacity() : capacity());
+        index.putLong(TOTAL, total);
+        index.putLong(CLOCK, clock);
+        index.putInt(OCCUPIED, used.size());
+        final byte[] hash = new byte[KEY];
+        for (int i = 0; i < used.size(); i++) {
+            entries.get(i * SLOT, hash);
+            index.put(offset(-find(hash) - 1), entries, i * SLOT, SLOT);
+        }
+        index.force();
+        index.putInt(0, MAGIC);
+    }
+
+    /**
+     * Clears the index in place, growing the file if it is too small. The file is never truncated,
+     * as it may still be mapped. The index stays marked damaged until {@link #MAGIC} is written back
+     * @param capacity number of slots in the cleared index
+     * @throws IOException if the index cannot be written
+     */
+    private void reset(final int capacity) throws IOException {
+        final long size = HEADER + (long) capacity * SLOT;
+        if (index == null || index.capacity() < size) {
+            index = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+        index.putInt(0, 0);
+        index.force();
+        for (int offset = Integer.BYTES; offset < size; offset += Integer.BYTES) {
+            index.putInt(offset, 0);
+        }
+        index.putInt(CAPACITY, capacity);
+    }
+
+    /**
+     * Returns file of the value
+     * @param hash hash of the key
+     * @return path to the file
+     */
+    private Path blob(final byte[] hash) {
+        return directory.resolve(HexFormat.of().formatHex(hash));
+    }
+
+    /**
+     * Returns SHA-256 hash of the key
+     * @param key key of a value
+     * @return hash of the key
+     */
+    private static byte[] hash(final String key) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8));
+        } catch (final NoSuchAlgorithmException e) {
+            throw new AssertionError("SHA-256 is not supported", e);
+        }
+    }
+
+    /**
+     * Writes the index to disk and unlocks the store
+     * @throws IOException if the index cannot be written
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            index.force();
+        } finally {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package info.kgeorgiy.ja.elagina.implementor;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Parameter;
+
+/**
+ * Source fragments of an interface implementation.
+ * Fragments are reflected and escaped once per interface and shared by all {@link Implementor}s.
+ * @author Elagina Alena
+ */
+final class InterfaceModel {
+
+    /**
+     * Models of already implemented interfaces
+     */
+    private static final ClassValue<InterfaceModel> MODELS = new ClassValue<>() {
+        @Override
+        protected InterfaceModel computeValue(final Class<?> type) {
+            return new InterfaceModel(type);
+        }
+    };
+
+    /**
+     * tabulation string
+     */
+    private static final String TAB = " ".repeat(4);
+    /**
+     * Hexadecimal digits of unicode escapes
+     */
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
+    /**
+     * Package declaration, empty for the unnamed package
+     */
+    private final String header;
+    /**
+     * Class declaration up to the opening brace
+     */
+    private final String declaration;
+    /**
+     * Complete method implementations
+     */
+    private final String[] methods;
+
+    /**
+     * Reflects and escapes the interface
+     * @param token Interface to be implemented
+     */
+    private InterfaceModel(final Class<?> token) {
+        final StringBuilder out = new StringBuilder();
+        if (!token.getPackageName().isEmpty()) {
+            out.append("package ").append(token.getPackageName()).append(";\n\n");
+        }
+        header = out.toString();
+
+        out.setLength(0);
+        out.append("public class ");
+        escape(out, token.getSimpleName());
+        out.append("Impl implements ");
+        escape(out, token.getCanonicalName());
+        out.append(" {\n");
+        declaration = out.toString();
+
+        final Method[] reflected = token.getMethods();
+        methods = new String[reflected.length];
+        for (int i = 0; i < reflected.length; i++) {
+            out.setLength(0);
+            writeMethod(out, reflected[i]);
+            methods[i] = out.toString();
+        }
+    }
+
+    /**
+     * Returns the model of the interface
+     * @param token Interface to be implemented
+     * @return cached model
+     */
+    static InterfaceModel of(final Class<?> token) {
+        return MODELS.get(token);
+    }
+
+    /**
+     * Appends the source of the implementation
+     * @param out Buffer for the source
+     */
+    void writeSource(final StringBuilder out) {
+        out.append(header).append(declaration);
+        for (final String method : methods) {
+            out.append(method);
+        }
+        out.append('}');
+    }
+
+    /**
+     * Appends implementation of an interface's method
+     * @param out Buffer for the method
+     * @param method Method to be implemented
+     */
+    private static void writeMethod(final StringBuilder out, final Method method) {
+        out.append(TAB).append(" public ");
+        escape(out, method.getReturnType().getCanonicalName());
+        out.append(' ');
+        escape(out, method.getName());
+        out.append(" (");
+        final Parameter[] params = method.getParameters();
+        for (int i = 0; i < params.length; i++) {
+            if (i > 0) {
+                out.append(", ");
+            }
+            escape(out, params[i].getType().getCanonicalName());
+            out.append(' ');
+            escape(out, params[i].getName());
+        }
+        out.append(") {\n")
+                .append(TAB).append(TAB).append("return").append(defaultValue(method.getReturnType())).append(";\n")
+                .append(TAB).append("}\n\n");
+    }
+
+    /**
+     * Appends the string, escaping all non-ASCII symbols by unicode sequence
+     * @param out Buffer for the escaped string
+     * @param seq Any non-null string
+     */
+    static void escape(final StringBuilder out, final String seq) {
+        for (int i = 0; i < seq.length(); i++) {
+            final char c = seq.charAt(i);
+            if (c >= 128) {
+                out.append("\\u")
+                        .append(HEX[c >>> 12]).append(HEX[(c >>> 8) & 0xF])
+                        .append(HEX[(c >>> 4) & 0xF]).append(HEX[c & 0xF]);
+            } else {
+                out.append(c);
+            }
+        }
+    }
+
+    /**
+     * Returns the default value for the corresponding type
+     * @param type The type we want the default value for
+     * @return the default value for the corresponding type
+     */
+    private static String defaultValue(final Class<?> type) {
+        if (type.equals(void.class)) {
+            return "";
+        } else if (type.equals(boolean.class)) {
+            return " false";
+        } else if (type.isPrimitive()) {
+            return " 0";
+        } else {
+            return " null";
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package info.kgeorgiy.ja.elagina.implementor;
+
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * File manager, that keeps compiled classes in memory instead of writing them to class output.
+ * @author Elagina Alena
+ */
+final class MemoryFileManager extends ForwardingJavaFileManager<StandardJavaFileManager> {
+
+    /**
+     * Bytecode of compiled classes by their binary names
+     */
+    private final Map<String, byte[]> classes = new ConcurrentHashMap<>();
+
+    /**
+     * @param fileManager Manager to read sources and class path with
+     */
+    MemoryFileManager(final StandardJavaFileManager fileManager) {
+        super(fileManager);
+    }
+
+    /**
+     * Creates compilation unit held in memory
+     * @param binaryName Binary name of the class
+     * @param code Source of the class
+     * @return source file
+     */
+    static JavaFileObject source(final String binaryName, final CharSequence code) {
+        return new SimpleJavaFileObject(uri(binaryName, JavaFileObject.Kind.SOURCE), JavaFileObject.Kind.SOURCE) {
+            @Override
+            public CharSequence getCharContent(final boolean ignoreEncodingErrors) {
+                return code;
+            }
+        };
+    }
+
+    /**
+     * Returns URI of an in-memory file
+     * @param binaryName Binary name of the class
+     * @param kind Kind of the file
+     * @return URI of the file
+     */
+    private static URI uri(final String binaryName, final JavaFileObject.Kind kind) {
+        return URI.create("string:///" + binaryName.replace('.', '/') + kind.extension);
+    }
+
+    @Override
+    public JavaFileObject getJavaFileForOutput(final Location location, final String className,
+                                               final JavaFileObject.Kind kind, final FileObject sibling) {
+        return new SimpleJavaFileObject(uri(className, kind), kind) {
+            @Override
+            public OutputStream openOutputStream() {
+                return new ByteArrayOutputStream() {
+                    @Override
+                    public void close() {
+                        classes.put(className, toByteArray());
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * Returns bytecode of compiled classes
+     * @return bytecode by binary names of classes
+     */
+    Map<String, byte[]> classes() {
+        return classes;
+    }
+}
@@ -0,0 +1,193 @@
+package info.kgeorgiy.ja.elagina.student;
+
+import info.kgeorgiy.java.advanced.student.GroupName;
+import info.kgeorgiy.java.advanced.student.Student;
+import info.kgeorgiy.java.advanced.student.StudentQuery;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Thread-safe {@link StudentQuery} decorator, that caches immutable query results.
+ * Results are keyed by the identity of the roster, the query and its argument,
+ * so a roster must be {@link #invalidate(Collection) invalidated} after it is modified.
+ * Rosters are referenced weakly, results of unreachable rosters are dropped.
+ * The least recently used results are evicted, when the cache is full.
+ * @author Elagina Alena
+ */
+public class CachingStudentDB implements StudentQuery {
+
+    private final StudentQuery query;
+    private final Map<Key, Object> cache;
+    private final ReferenceQueue<Collection<Student>> collected = new ReferenceQueue<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * @param query queries to cache
+     * @param capacity maximal number of cached results
+     */
+    public CachingStudentDB(StudentQuery query, int capacity) {
+        this.query = query;
+        this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Object> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    public CachingStudentDB(int capacity) {
+        this(new StudentDB(), capacity);
+    }
+
+    private record Key(WeakReference<Collection<Student>> roster, int rosterHash, String query, Object argument) {
+        private Key(Collection<Student> roster, ReferenceQueue<Collection<Student>> queue, String query,
+                    Object argument) {
+            this(new WeakReference<>(roster, queue), System.identityHashCode(roster), query, argument);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            return o instanceof Key key && rosterHash == key.rosterHash
+                    && roster.get() != null && roster.get() == key.roster.get()
+                    && query.equals(key.query) && Objects.equals(argument, key.argument);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(rosterHash, query, argument);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T cached(Collection<Student> roster, String name, Object argument, Supplier<T> result) {
+        Key key = new Key(roster, collected, name, argument);
+        Object value;
+        synchronized (cache) {
+            dropCollected();
+            value = cache.get(key);
+        }
+        if (value != null) {
+            hits.increment();
+            return (T) value;
+        }
+        misses.increment();
+        T computed = result.get();
+        synchronized (cache) {
+            cache.put(key, computed);
+        }
+        return computed;
+    }
+
+    /**
+     * Drops results of rosters, that were garbage collected
+     */
+    private void dropCollected() {
+        boolean cleared = false;
+        while (collected.poll() != null) {
+            cleared = true;
+        }
+        if (cleared) {
+            cache.keySet().removeIf(key -> key.roster.get() == null);
+        }
+    }
+
+    /**
+     * Drops all results, computed for the roster
+     * @param roster modified roster
+     */
+    public void invalidate(Collection<Student> roster) {
+        synchronized (cache) {
+            cache.keySet().removeIf(key -> key.roster.get() == roster);
+        }
+    }
+
+    /**
+     * Drops all results
+     */
+    public void invalidateAll() {
+        synchronized (cache) {
+            cache.clear();
+        }
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    @Override
+    public List<String> getFirstNames(List<Student> students) {
+        return cached(students, "getFirstNames", null, () -> List.copyOf(query.getFirstNames(students)));
+    }
+
+    @Override
+    public List<String> getLastNames(List<Student> students) {
+        return cached(students, "getLastNames", null, () -> List.copyOf(query.getLastNames(students)));
+    }
+
+    @Override
+    public List<GroupName> getGroups(List<Student> students) {
+        return cached(students, "getGroups", null, () -> List.copyOf(query.getGroups(students)));
+    }
+
+    @Override
+    public List<String> getFullNames(List<Student> students) {
+        return cached(students, "getFullNames", null, () -> List.copyOf(query.getFullNames(students)));
+    }
+
+    @Override
+    public Set<String> getDistinctFirstNames(List<Student> students) {
+        return cached(students, "getDistinctFirstNames", null,
+                () -> Set.copyOf(query.getDistinctFirstNames(students)));
+    }
+
+    @Override
+    public String getMaxStudentFirstName(List<Student> students) {
+        return cached(students, "getMaxStudentFirstName", null, () -> query.getMaxStudentFirstName(students));
+    }
+
+    @Override
+    public List<Student> sortStudentsById(Collection<Student> students) {
+        return cached(students, "sortStudentsById", null, () -> List.copyOf(query.sortStudentsById(students)));
+    }
+
+    @Override
+    public List<Student> sortStudentsByName(Collection<Student> students) {
+        return cached(students, "sortStudentsByName", null, () -> List.copyOf(query.sortStudentsByName(students)));
+    }
+
+    @Override
+    public List<Student> findStudentsByFirstName(Collection<Student> students, String name) {
+        return cached(students, "findStudentsByFirstName", name,
+                () -> List.copyOf(query.findStudentsByFirstName(students, name)));
+    }
+
+    @Override
+    public List<Student> findStudentsByLastName(Collection<Student> students, String name) {
+        return cached(students, "findStudentsByLastName", name,
+                () -> List.copyOf(query.findStudentsByLastName(students, name)));
+    }
+
+    @Override
+    public List<Student> findStudentsByGroup(Collection<Student> students, GroupName group) {
+        return cached(students, "findStudentsByGroup", group,
+                () -> List.copyOf(query.findStudentsByGroup(students, group)));
+    }
+
+    @Override
+    public Map<String, String> findStudentNamesByGroup(Collection<Student> students, GroupName group) {
+        return cached(students, "findStudentNamesByGroup", group,
+                () -> Map.copyOf(query.findStudentNamesByGroup(students, group)));
+    }
+}
@@ -0,0 +1,56 @@
+package info.kgeorgiy.ja.elagina.student;
+
+import info.kgeorgiy.java.advanced.student.GroupName;
+import info.kgeorgiy.java.advanced.student.Student;
+
+import java.util.*;
+import java.util.function.BinaryOperator;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Immutable roster with hash indexes by first name, last name and group.
+ * Buckets of the indexes are sorted by name, so queries return the same results
+ * as the corresponding {@link StudentDB} queries in {@code O(1)} plus the size of the result.
+ * @author Elagina Alena
+ */
+public class IndexedStudentDB {
+
+    private final Map<String, List<Student>> byFirstName;
+    private final Map<String, List<Student>> byLastName;
+    private final Map<GroupName, List<Student>> byGroup;
+
+    /**
+     * Builds indexes of the roster
+     * @param students roster
+     */
+    public IndexedStudentDB(Collection<Student> students) {
+        List<Student> sorted = students.stream().sorted(StudentDB.NAME_ORDER).toList();
+        byFirstName = index(sorted, Student::getFirstName);
+        byLastName = index(sorted, Student::getLastName);
+        byGroup = index(sorted, Student::getGroup);
+    }
+
+    private static <K> Map<K, List<Student>> index(List<Student> sorted, Function<Student, K> key) {
+        return sorted.stream().collect(Collectors.groupingBy(key, Collectors.toUnmodifiableList()));
+    }
+
+    public List<Student> findStudentsByFirstName(String name) {
+        return byFirstName.getOrDefault(name, List.of());
+    }
+
+    public List<Student> findStudentsByLastName(String name) {
+        return byLastName.getOrDefault(name, List.of());
+    }
+
+    public List<Student> findStudentsByGroup(GroupName group) {
+        return byGroup.getOrDefault(group, List.of());
+    }
+
+    public Map<String, String> findStudentNamesByGroup(GroupName group) {
+        return findStudentsByGroup(group).stream()
+                .collect(Collectors.toMap(Student::getLastName,
+                        Student::getFirstName,
+                        BinaryOperator.minBy(Comparator.naturalOrder())));
+    }
+}
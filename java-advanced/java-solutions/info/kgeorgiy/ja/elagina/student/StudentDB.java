@@ -3,6 +3,7 @@ package info.kgeorgiy.ja.elagina.student;
 import info.kgeorgiy.java.advanced.student.*;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.BinaryOperator;
 import java.util.function.Function;
 import java.util.stream.Collectors;
@@ -10,8 +11,31 @@ import java.util.stream.Stream;
 
 public class StudentDB implements StudentQuery {
 
+    private static final int DEFAULT_PARALLEL_THRESHOLD = 1 << 16;
+
+    private final int parallelThreshold;
+
+    public StudentDB() {
+        this(DEFAULT_PARALLEL_THRESHOLD);
+    }
+
+    /**
+     * @param parallelThreshold minimal number of students, that are processed in parallel
+     */
+    public StudentDB(int parallelThreshold) {
+        this.parallelThreshold = parallelThreshold;
+    }
+
+    private boolean parallel(Collection<Student> students) {
+        return students.size() >= parallelThreshold;
+    }
+
+    private Stream<Student> stream(Collection<Student> students) {
+        return parallel(students) ? students.parallelStream() : students.stream();
+    }
+
     private <T> Stream<T> mappedStudents(List<Student> students, Function<Student, T> func) {
-        return students.stream()
+        return stream(students)
                 .map(func);
     }
 
@@ -44,19 +68,24 @@ public class StudentDB implements StudentQuery {
 
     @Override
     public Set<String> getDistinctFirstNames(List<Student> students) {
+        if (parallel(students)) {
+            Set<String> names = ConcurrentHashMap.newKeySet();
+            mappedStudents(students, Student::getFirstName).forEach(names::add);
+            return names;
+        }
         return mappedStudents(students, Student::getFirstName).collect(Collectors.toSet());
     }
 
     @Override
     public String getMaxStudentFirstName(List<Student> students) {
-        return students.stream()
+        return stream(students)
                 .max(Student::compareTo)
                 .map(Student::getFirstName)
                 .orElse("");
     }
 
     private Stream<Student> sortedStudents(Collection<Student> students, Comparator<Student> cmp) {
-        return students.stream()
+        return stream(students)
                 .sorted(cmp);
     }
 
@@ -69,24 +98,58 @@ public class StudentDB implements StudentQuery {
         return sortedStudentsToList(students, Student::compareTo);
     }
 
-    private final Comparator<Student> studentComparator = Comparator.comparing(Student::getLastName)
+    private static final Comparator<Student> studentComparator = Comparator.comparing(Student::getLastName)
             .thenComparing(Student::getFirstName).reversed()
             .thenComparing(Student::getId);
 
+    static final Comparator<Student> NAME_ORDER = studentComparator.reversed();
+
+    /**
+     * Collation key of a student in {@link #NAME_ORDER}, computed once per sort
+     */
+    private record NameKey(String lastName, String firstName, int id, int index) implements Comparable<NameKey> {
+        @Override
+        public int compareTo(NameKey o) {
+            int cmp = lastName.compareTo(o.lastName);
+            if (cmp == 0) {
+                cmp = firstName.compareTo(o.firstName);
+            }
+            return cmp != 0 ? cmp : Integer.compare(o.id, id);
+        }
+    }
+
+    private List<Student> sortedByName(Collection<Student> students) {
+        Student[] array = students.toArray(Student[]::new);
+        NameKey[] keys = new NameKey[array.length];
+        for (int i = 0; i < array.length; i++) {
+            keys[i] = new NameKey(array[i].getLastName(), array[i].getFirstName(), array[i].getId(), i);
+        }
+        if (parallel(students)) {
+            Arrays.parallelSort(keys);
+        } else {
+            Arrays.sort(keys);
+        }
+
+        Student[] sorted = new Student[array.length];
+        for (int i = 0; i < keys.length; i++) {
+            sorted[i] = array[keys[i].index];
+        }
+        return Collections.unmodifiableList(Arrays.asList(sorted));
+    }
+
     @Override
     public List<Student> sortStudentsByName(Collection<Student> students) {
-        return sortedStudentsToList(students, studentComparator.reversed());
+        return sortedByName(students);
     }
 
     private <T> Stream<Student> filteredStudents(Collection<Student> students, Function<Student, T> func, T value) {
-        return sortedStudents(students.stream()
-                .filter(student -> func.apply(student).equals(value))
-                .toList(), studentComparator.reversed());
+        return stream(students)
+                .filter(student -> func.apply(student).equals(value));
     }
 
 
     private <T> List<Student> filteredStudentsToList(Collection<Student> students,  Function<Student, T> param, T name) {
-        return filteredStudents(students, param, name).toList();
+        return sortedByName(filteredStudents(students, param, name).toList());
     }
 
     @Override
@@ -106,9 +169,14 @@ public class StudentDB implements StudentQuery {
 
     @Override
     public Map<String, String> findStudentNamesByGroup(Collection<Student> students, GroupName group) {
-        return filteredStudents(students, Student::getGroup, group)
-                .collect(Collectors.toMap(Student::getLastName,
-                        Student::getFirstName,
-                        BinaryOperator.minBy(Comparator.naturalOrder())));
+        Stream<Student> filtered = filteredStudents(students, Student::getGroup, group);
+        if (filtered.isParallel()) {
+            return filtered.collect(Collectors.toConcurrentMap(Student::getLastName,
+                    Student::getFirstName,
+                    BinaryOperator.minBy(Comparator.naturalOrder())));
+        }
+        return filtered.collect(Collectors.toMap(Student::getLastName,
+                Student::getFirstName,
+                BinaryOperator.minBy(Comparator.naturalOrder())));
     }
 }
@@ -0,0 +1,171 @@
+package info.kgeorgiy.ja.elagina.student;
+
+import info.kgeorgiy.java.advanced.student.GroupName;
+import info.kgeorgiy.java.advanced.student.Student;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BinaryOperator;
+import java.util.stream.Collectors;
+
+/**
+ * Thread-safe mutable roster, that maintains name and group indexes on every update.
+ * Queries hold a read lock only to copy their results,
+ * the student with maximal id and group summaries are read without locking.
+ * @author Elagina Alena
+ */
+public final class StudentStore {
+
+    private static final Comparator<Student> NAME_ORDER = StudentDB.NAME_ORDER.thenComparing(Student::getGroup);
+    private static final Comparator<Student> ID_ORDER = Comparator.<Student>naturalOrder()
+            .thenComparing(StudentDB.NAME_ORDER)
+            .thenComparing(Student::getGroup);
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Set<Student> students = new HashSet<>();
+    private final Map<String, NavigableSet<Student>> byFirstName = new HashMap<>();
+    private final Map<String, NavigableSet<Student>> byLastName = new HashMap<>();
+    private final Map<GroupName, NavigableSet<Student>> byGroup = new HashMap<>();
+    private final NavigableSet<Student> byId = new TreeSet<>(ID_ORDER);
+    private final Map<GroupName, NavigableSet<Student>> byGroupId = new HashMap<>();
+
+    private final ConcurrentMap<GroupName, GroupSummary> summaries = new ConcurrentHashMap<>();
+    private volatile Student maxStudent;
+
+    /**
+     * Aggregates of a group
+     * @param size number of students in the group
+     * @param maxStudent student with maximal id, {@code null} if the group is empty
+     */
+    public record GroupSummary(int size, Student maxStudent) {
+        private static final GroupSummary EMPTY = new GroupSummary(0, null);
+    }
+
+    public StudentStore() {}
+
+    public StudentStore(Collection<Student> students) {
+        students.forEach(this::add);
+    }
+
+    public boolean add(Student student) {
+        lock.writeLock().lock();
+        try {
+            if (!students.add(Objects.requireNonNull(student))) {
+                return false;
+            }
+            index(student, true);
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public boolean remove(Student student) {
+        lock.writeLock().lock();
+        try {
+            if (!students.remove(student)) {
+                return false;
+            }
+            index(student, false);
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Atomically replaces a student
+     * @return {@code false} if {@code student} is absent or {@code updated} is another present student,
+     * the roster is not changed then
+     */
+    public boolean update(Student student, Student updated) {
+        Objects.requireNonNull(updated);
+        lock.writeLock().lock();
+        try {
+            if (!students.contains(student) || !updated.equals(student) && students.contains(updated)) {
+                return false;
+            }
+            remove(student);
+            add(updated);
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void index(Student student, boolean add) {
+        update(byFirstName, student.getFirstName(), student, NAME_ORDER, add);
+        update(byLastName, student.getLastName(), student, NAME_ORDER, add);
+        update(byGroup, student.getGroup(), student, NAME_ORDER, add);
+        NavigableSet<Student> group = update(byGroupId, student.getGroup(), student, ID_ORDER, add);
+        if (add) {
+            byId.add(student);
+        } else {
+            byId.remove(student);
+        }
+
+        maxStudent = byId.isEmpty() ? null : byId.last();
+        summaries.put(student.getGroup(), group.isEmpty()
+                ? GroupSummary.EMPTY
+                : new GroupSummary(group.size(), group.last()));
+    }
+
+    private static <K> NavigableSet<Student> update(Map<K, NavigableSet<Student>> index, K key, Student student,
+                                                    Comparator<Student> order, boolean add) {
+        NavigableSet<Student> bucket = index.computeIfAbsent(key, k -> new TreeSet<>(order));
+        if (add) {
+            bucket.add(student);
+        } else {
+            bucket.remove(student);
+        }
+        return bucket;
+    }
+
+    private <K> List<Student> find(Map<K, NavigableSet<Student>> index, K key) {
+        lock.readLock().lock();
+        try {
+            return List.copyOf(index.getOrDefault(key, Collections.emptyNavigableSet()));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return students.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public List<Student> findStudentsByFirstName(String name) {
+        return find(byFirstName, name);
+    }
+
+    public List<Student> findStudentsByLastName(String name) {
+        return find(byLastName, name);
+    }
+
+    public List<Student> findStudentsByGroup(GroupName group) {
+        return find(byGroup, group);
+    }
+
+    public Map<String, String> findStudentNamesByGroup(GroupName group) {
+        return findStudentsByGroup(group).stream()
+                .collect(Collectors.toMap(Student::getLastName,
+                        Student::getFirstName,
+                        BinaryOperator.minBy(Comparator.naturalOrder())));
+    }
+
+    public String getMaxStudentFirstName() {
+        return Optional.ofNullable(maxStudent).map(Student::getFirstName).orElse("");
+    }
+
+    public GroupSummary getGroupSummary(GroupName group) {
+        return summaries.getOrDefault(group, GroupSummary.EMPTY);
+    }
+}
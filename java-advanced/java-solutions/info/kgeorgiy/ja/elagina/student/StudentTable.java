@@ -0,0 +1,187 @@
+package info.kgeorgiy.ja.elagina.student;
+
+import info.kgeorgiy.java.advanced.student.GroupName;
+import info.kgeorgiy.java.advanced.student.Student;
+
+import java.util.*;
+import java.util.function.Function;
+import java.util.function.IntBinaryOperator;
+import java.util.function.IntPredicate;
+import java.util.stream.IntStream;
+
+/**
+ * Immutable columnar roster. Names are replaced by codes in sorted dictionaries,
+ * so every name is stored once and names compare as their codes.
+ * Queries give the same results as the corresponding {@link StudentDB} queries,
+ * {@link Student} objects and strings are created only for the results.
+ * @author Elagina Alena
+ */
+public class StudentTable {
+
+    private static final GroupName[] GROUPS = GroupName.values();
+
+    private final int[] ids;
+    private final int[] firstNames;
+    private final int[] lastNames;
+    private final byte[] groups;
+    private final String[] firstNameDictionary;
+    private final String[] lastNameDictionary;
+
+    /**
+     * Builds columns of the roster
+     * @param students roster
+     */
+    public StudentTable(Collection<Student> students) {
+        List<Student> rows = List.copyOf(students);
+        firstNameDictionary = dictionary(rows, Student::getFirstName);
+        lastNameDictionary = dictionary(rows, Student::getLastName);
+
+        ids = new int[rows.size()];
+        firstNames = new int[rows.size()];
+        lastNames = new int[rows.size()];
+        groups = new byte[rows.size()];
+        for (int i = 0; i < rows.size(); i++) {
+            Student student = rows.get(i);
+            ids[i] = student.getId();
+            firstNames[i] = Arrays.binarySearch(firstNameDictionary, student.getFirstName());
+            lastNames[i] = Arrays.binarySearch(lastNameDictionary, student.getLastName());
+            groups[i] = (byte) student.getGroup().ordinal();
+        }
+    }
+
+    private static String[] dictionary(List<Student> rows, Function<Student, String> name) {
+        return rows.stream().map(name).distinct().sorted().toArray(String[]::new);
+    }
+
+    private static int code(String[] dictionary, String name) {
+        int code = Arrays.binarySearch(dictionary, name);
+        return code >= 0 ? code : -1;
+    }
+
+    private Student student(int row) {
+        return new Student(ids[row], firstNameDictionary[firstNames[row]], lastNameDictionary[lastNames[row]],
+                GROUPS[groups[row]]);
+    }
+
+    private int compareByName(int a, int b) {
+        if (lastNames[a] != lastNames[b]) {
+            return Integer.compare(lastNames[a], lastNames[b]);
+        }
+        if (firstNames[a] != firstNames[b]) {
+            return Integer.compare(firstNames[a], firstNames[b]);
+        }
+        return Integer.compare(ids[b], ids[a]);
+    }
+
+    private IntStream rows() {
+        return IntStream.range(0, ids.length);
+    }
+
+    private List<Student> students(IntStream rows) {
+        return rows.mapToObj(this::student).toList();
+    }
+
+    private List<Student> sortedByName(IntPredicate filter) {
+        return students(sorted(rows().filter(filter).toArray(), this::compareByName));
+    }
+
+    /**
+     * Stable sort of row numbers, that does not box them
+     */
+    private static IntStream sorted(int[] rows, IntBinaryOperator order) {
+        mergeSort(rows, new int[rows.length], 0, rows.length, order);
+        return Arrays.stream(rows);
+    }
+
+    private static void mergeSort(int[] rows, int[] buffer, int from, int to, IntBinaryOperator order) {
+        if (to - from < 2) {
+            return;
+        }
+        int mid = (from + to) >>> 1;
+        mergeSort(rows, buffer, from, mid, order);
+        mergeSort(rows, buffer, mid, to, order);
+        if (order.applyAsInt(rows[mid - 1], rows[mid]) <= 0) {
+            return;
+        }
+        System.arraycopy(rows, from, buffer, from, to - from);
+        for (int i = from, j = mid, k = from; k < to; k++) {
+            rows[k] = j == to || i < mid && order.applyAsInt(buffer[i], buffer[j]) <= 0 ? buffer[i++] : buffer[j++];
+        }
+    }
+
+    public int size() {
+        return ids.length;
+    }
+
+    public List<String> getFirstNames() {
+        return rows().mapToObj(row -> firstNameDictionary[firstNames[row]]).toList();
+    }
+
+    public List<String> getLastNames() {
+        return rows().mapToObj(row -> lastNameDictionary[lastNames[row]]).toList();
+    }
+
+    public List<GroupName> getGroups() {
+        return rows().mapToObj(row -> GROUPS[groups[row]]).toList();
+    }
+
+    public List<String> getFullNames() {
+        return rows().mapToObj(row -> firstNameDictionary[firstNames[row]] + " " + lastNameDictionary[lastNames[row]])
+                .toList();
+    }
+
+    public Set<String> getDistinctFirstNames() {
+        return new HashSet<>(Arrays.asList(firstNameDictionary));
+    }
+
+    public String getMaxStudentFirstName() {
+        int max = -1;
+        for (int row = 0; row < ids.length; row++) {
+            if (max < 0 || ids[row] > ids[max]) {
+                max = row;
+            }
+        }
+        return max < 0 ? "" : firstNameDictionary[firstNames[max]];
+    }
+
+    public List<Student> sortStudentsById() {
+        return students(sorted(rows().toArray(), (a, b) -> Integer.compare(ids[a], ids[b])));
+    }
+
+    public List<Student> sortStudentsByName() {
+        return sortedByName(row -> true);
+    }
+
+    public List<Student> findStudentsByFirstName(String name) {
+        int code = code(firstNameDictionary, name);
+        return sortedByName(row -> firstNames[row] == code);
+    }
+
+    public List<Student> findStudentsByLastName(String name) {
+        int code = code(lastNameDictionary, name);
+        return sortedByName(row -> lastNames[row] == code);
+    }
+
+    public List<Student> findStudentsByGroup(GroupName group) {
+        int code = group.ordinal();
+        return sortedByName(row -> groups[row] == code);
+    }
+
+    public Map<String, String> findStudentNamesByGroup(GroupName group) {
+        int code = group.ordinal();
+        int[] firstName = new int[lastNameDictionary.length];
+        Arrays.fill(firstName, -1);
+        for (int row = 0; row < ids.length; row++) {
+            if (groups[row] == code && (firstName[lastNames[row]] < 0 || firstNames[row] < firstName[lastNames[row]])) {
+                firstName[lastNames[row]] = firstNames[row];
+            }
+        }
+        Map<String, String> names = new HashMap<>();
+        for (int last = 0; last < firstName.length; last++) {
+            if (firstName[last] >= 0) {
+                names.put(lastNameDictionary[last], firstNameDictionary[firstName[last]]);
+            }
+        }
+        return names;
+    }
+}
@@ -0,0 +1,148 @@
+package info.kgeorgiy.ja.elagina.walk;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * Hash functions of file contents
+ * @author Elagina Alena
+ */
+enum HashAlgorithm {
+    /**
+     * 32-bit Jenkins one-at-a-time hash
+     */
+    JENKINS("jenkins", 4) {
+        @Override
+        Hash newHash() {
+            return new Hash() {
+                private int hash;
+
+                @Override
+                public void update(final ByteBuffer buffer) {
+                    int h = hash;
+                    if (buffer.hasArray()) {
+                        final byte[] array = buffer.array();
+                        final int end = buffer.arrayOffset() + buffer.limit();
+                        for (int i = buffer.arrayOffset() + buffer.position(); i < end; i++) {
+                            h += array[i] & 0xff;
+                            h += h << 10;
+                            h ^= h >>> 6;
+                        }
+                        buffer.position(buffer.limit());
+                    } else {
+                        while (buffer.hasRemaining()) {
+                            h += buffer.get() & 0xff;
+                            h += h << 10;
+                            h ^= h >>> 6;
+                        }
+                    }
+                    hash = h;
+                }
+
+                @Override
+                public String digest() {
+                    int h = hash;
+                    h += h << 3;
+                    h ^= h >>> 11;
+                    h += h << 15;
+                    return String.format("%08x", h);
+                }
+            };
+        }
+    },
+    /**
+     * SHA-1 digest
+     */
+    SHA_1("sha-1", 20) {
+        @Override
+        Hash newHash() {
+            final MessageDigest digest;
+            try {
+                digest = MessageDigest.getInstance("SHA-1");
+            } catch (final NoSuchAlgorithmException e) {
+                throw new AssertionError("SHA-1 is not supported", e);
+            }
+            return new Hash() {
+                @Override
+                public void update(final ByteBuffer buffer) {
+                    digest.update(buffer);
+                }
+
+                @Override
+                public String digest() {
+                    return HexFormat.of().formatHex(digest.digest());
+                }
+            };
+        }
+    };
+
+    /**
+     * Incremental hash of a file
+     */
+    interface Hash {
+        /**
+         * Hashes remaining bytes of the buffer
+         * @param buffer next bytes of the file
+         */
+        void update(ByteBuffer buffer);
+
+        /**
+         * @return hexadecimal hash of all hashed bytes
+         */
+        String digest();
+    }
+
+    /**
+     * Name of the algorithm in command line
+     */
+    private final String name;
+    /**
+     * Length of hashes in bytes
+     */
+    private final int bytes;
+    /**
+     * Hash of files, that cannot be read
+     */
+    private final String zero;
+
+    HashAlgorithm(final String name, final int bytes) {
+        this.name = name;
+        this.bytes = bytes;
+        this.zero = "0".repeat(2 * bytes);
+    }
+
+    /**
+     * @return new hash of empty file
+     */
+    abstract Hash newHash();
+
+    /**
+     * @return length of hashes in bytes
+     */
+    int bytes() {
+        return bytes;
+    }
+
+    /**
+     * @return hash of files, that cannot be read
+     */
+    String zero() {
+        return zero;
+    }
+
+    /**
+     * @param name name of the algorithm in command line
+     * @return algorithm with the given name
+     * @throws IllegalArgumentException if there is no such algorithm
+     */
+    static HashAlgorithm forName(final String name) {
+        for (final HashAlgorithm algorithm : values()) {
+            if (algorithm.name.equalsIgnoreCase(name)) {
+                return algorithm;
+            }
+        }
+        throw new IllegalArgumentException("Unknown hash algorithm: " + name);
+    }
+}
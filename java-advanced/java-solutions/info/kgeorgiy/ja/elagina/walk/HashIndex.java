@@ -0,0 +1,387 @@
+package info.kgeorgiy.ja.elagina.walk;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.IntStream;
+
+/**
+ * Persistent index of file hashes, that allows to skip files not modified since they were hashed.
+ * Entries are kept sorted by path in a binary file, that is read lazily by positional reads:
+ * a lookup reads only the entries of its binary search, so opening the index does not depend on the number of entries.
+ * Entries are checked against the file size when they are read, damaged entries are treated as absent.
+ * Updates are merged into the file by {@link #save()}, entries of files, that were not visited, are kept
+ * while the files exist.
+ * @author Elagina Alena
+ */
+final class HashIndex implements AutoCloseable {
+    /**
+     * First bytes of the index file
+     */
+    private static final int MAGIC = 0x57414C4B;
+    /**
+     * Header: magic, hash algorithm, number of entries
+     */
+    private static final int HEADER = 3 * Integer.BYTES;
+    /**
+     * Entry layout: file size, modification time, hash, path length, path
+     */
+    private static final int SIZE = 0, MODIFIED = Long.BYTES, HASH = 2 * Long.BYTES;
+    /**
+     * Size of blocks read by lookups and by {@link #save()}
+     */
+    private static final int LOOKUP_BLOCK = 256, SAVE_BLOCK = 1 << 16;
+
+    /**
+     * Index file
+     */
+    private final Path file;
+    /**
+     * Hash function of file contents
+     */
+    private final HashAlgorithm algorithm;
+    /**
+     * Length of stored hashes
+     */
+    private final int hashBytes;
+    /**
+     * Open index file, {@code null} if there are no stored entries or the index is closed
+     */
+    private volatile FileChannel channel;
+    /**
+     * Size of the index file
+     */
+    private final long size;
+    /**
+     * Number of stored entries
+     */
+    private final int count;
+    /**
+     * Entries of files hashed after the index was opened
+     */
+    private final Map<String, Entry> updates = new ConcurrentHashMap<>();
+
+    /**
+     * Hashed state of a file
+     * @param size size of the file
+     * @param modified modification time of the file
+     * @param hash hash of the file
+     */
+    private record Entry(long size, long modified, byte[] hash) {}
+
+    /**
+     * Entry read from the index file
+     * @param path path of the file
+     * @param entry hashed state of the file
+     */
+    private record Stored(byte[] path, Entry entry) {}
+
+    /**
+     * Positional reader of the index file, that keeps the last read block
+     */
+    private static final class Reader {
+        private final FileChannel channel;
+        private final long size;
+        private final int block;
+        private ByteBuffer buffer = ByteBuffer.allocate(0);
+        private long start;
+
+        /**
+         * @param channel index file
+         * @param size size of the index file
+         * @param block number of bytes read at once
+         */
+        private Reader(final FileChannel channel, final long size, final int block) {
+            this.channel = channel;
+            this.size = size;
+            this.block = block;
+        }
+
+        /**
+         * Reads bytes of the index file
+         * @param position position of the first byte
+         * @param length number of bytes, the bytes must lie within the file
+         * @return read bytes
+         * @throws IOException if the file cannot be read
+         */
+        private ByteBuffer read(final long position, final int length) throws IOException {
+            if (position < start || position + length > start + buffer.limit()) {
+                start = position;
+                buffer = ByteBuffer.allocate((int) Math.min(Math.max(length, block), size - position));
+                while (buffer.hasRemaining()) {
+                    if (channel.read(buffer, start + buffer.position()) < 0) {
+                        throw new IOException("Index file is truncated");
+                    }
+                }
+                buffer.flip();
+            }
+            return buffer.slice((int) (position - start), length);
+        }
+    }
+
+    /**
+     * Opens index file. Missing, damaged files and files of other hash algorithms are treated as empty index.
+     * @param file index file
+     * @param algorithm hash function of file contents
+     * @throws IOException if index file cannot be read
+     */
+    HashIndex(final Path file, final HashAlgorithm algorithm) throws IOException {
+        this.file = file;
+        this.algorithm = algorithm;
+        this.hashBytes = algorithm.bytes();
+
+        FileChannel opened = null;
+        long length = 0;
+        int stored = 0;
+        try {
+            opened = FileChannel.open(file);
+            length = opened.size();
+            if (length >= HEADER) {
+                final ByteBuffer header = new Reader(opened, length, HEADER).read(0, HEADER);
+                final int entries = header.getInt(2 * Integer.BYTES);
+                if (header.getInt(0) == MAGIC && header.getInt(Integer.BYTES) == algorithm.ordinal()
+                        && entries >= 0 && HEADER + (long) Integer.BYTES * entries <= length) {
+                    stored = entries;
+                }
+            }
+        } catch (final NoSuchFileException ignored) {
+            // Index is created by save
+        } finally {
+            if (stored == 0 && opened != null) {
+                opened.close();
+                opened = null;
+            }
+        }
+        channel = opened;
+        size = length;
+        count = stored;
+    }
+
+    /**
+     * Returns stored hash of the file, if the file is not modified since it was hashed
+     * @param path absolute path of the file
+     * @param size current size of the file
+     * @param modified current modification time of the file
+     * @return hash of the file, {@code null} if it should be hashed again
+     */
+    String lookup(final String path, final long size, final long modified) {
+        final FileChannel current = channel;
+        if (current == null) {
+            return null;
+        }
+        final Entry entry;
+        try {
+            entry = find(new Reader(current, this.size, LOOKUP_BLOCK), path.getBytes(StandardCharsets.UTF_8));
+        } catch (final IOException e) {
+            return null;
+        }
+        if (entry == null || entry.size() != size || entry.modified() != modified) {
+            return null;
+        }
+        return HexFormat.of().formatHex(entry.hash());
+    }
+
+    /**
+     * Records hash of the file
+     * @param path absolute path of the file
+     * @param size size of the file before it was hashed
+     * @param modified modification time of the file before it was hashed
+     * @param hash hash of the file
+     */
+    void update(final String path, final long size, final long modified, final String hash) {
+        updates.put(path, new Entry(size, modified, HexFormat.of().parseHex(hash)));
+    }
+
+    /**
+     * Reads stored entry, checking that it lies within the index file
+     * @param reader reader of the index file
+     * @param i number of the entry in path order
+     * @return the entry, {@code null} if it is damaged
+     * @throws IOException if the index file cannot be read
+     */
+    private Stored stored(final Reader reader, final int i) throws IOException {
+        final long offset = reader.read(HEADER + (long) Integer.BYTES * i, Integer.BYTES).getInt(0);
+        final int fixed = HASH + hashBytes + Integer.BYTES;
+        if (offset < HEADER + (long) Integer.BYTES * count || offset + fixed > size) {
+            return null;
+        }
+        final ByteBuffer head = reader.read(offset, fixed);
+        final int length = head.getInt(fixed - Integer.BYTES);
+        if (length < 0 || offset + fixed + length > size) {
+            return null;
+        }
+        final byte[] hash = new byte[hashBytes];
+        head.get(HASH, hash);
+        final byte[] path = new byte[length];
+        reader.read(offset + fixed, length).get(0, path);
+        return new Stored(path, new Entry(head.getLong(SIZE), head.getLong(MODIFIED), hash));
+    }
+
+    /**
+     * Finds stored entry of the path
+     * @param reader reader of the index file
+     * @param path path of the file
+     * @return the entry, {@code null} if it is absent or a damaged entry is met
+     * @throws IOException if the index file cannot be read
+     */
+    private Entry find(final Reader reader, final byte[] path) throws IOException {
+        int low = 0;
+        int high = count - 1;
+        while (low <= high) {
+            final int mid = (low + high) >>> 1;
+            final Stored stored = stored(reader, mid);
+            if (stored == null) {
+                return null;
+            }
+            final int cmp = Arrays.compareUnsigned(path, stored.path());
+            if (cmp == 0) {
+                return stored.entry();
+            } else if (cmp < 0) {
+                high = mid - 1;
+            } else {
+                low = mid + 1;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Checks whether the stored entry should be kept
+     * @param stored stored entry
+     * @return {@code true} if the file of the entry still exists
+     */
+    private static boolean exists(final Stored stored) {
+        try {
+            return Files.isRegularFile(Path.of(new String(stored.path(), StandardCharsets.UTF_8)));
+        } catch (final InvalidPathException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Writes the entry
+     * @param out output of entries
+     * @param path path of the file
+     * @param entry hashed state of the file
+     * @return number of written bytes
+     * @throws IOException if the entry cannot be written
+     */
+    private long write(final DataOutputStream out, final byte[] path, final Entry entry) throws IOException {
+        out.writeLong(entry.size());
+        out.writeLong(entry.modified());
+        out.write(entry.hash());
+        out.writeInt(path.length);
+        out.write(path);
+        return HASH + hashBytes + Integer.BYTES + path.length;
+    }
+
+    /**
+     * Writes stored and updated entries into the index file.
+     * Damaged entries and entries of files, that no longer exist, are dropped.
+     * The index is closed before the file is replaced
+     * @throws IOException if index file cannot be written
+     */
+    void save() throws IOException {
+        final List<Map.Entry<byte[], Entry>> updated = updates.entrySet().stream()
+                .map(e -> Map.entry(e.getKey().getBytes(StandardCharsets.UTF_8), e.getValue()))
+                .sorted(Map.Entry.comparingByKey(Arrays::compareUnsigned))
+                .toList();
+
+        final Path directory = file.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        final Path entries = Files.createTempFile(directory, null, null);
+        final Path temp = Files.createTempFile(directory, null, null);
+        try {
+            final IntStream.Builder offsets = IntStream.builder();
+            boolean changed = !updated.isEmpty();
+            try (final DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(entries), SAVE_BLOCK))) {
+                final FileChannel current = channel;
+                final Reader reader = current == null ? null : new Reader(current, size, SAVE_BLOCK);
+                final int limit = current == null ? 0 : count;
+                long position = 0;
+                int i = 0;
+                int j = 0;
+                Stored stored = null;
+                while (true) {
+                    while (stored == null && i < limit) {
+                        stored = stored(reader, i++);
+                        if (stored == null || !exists(stored)) {
+                            stored = null;
+                            changed = true;
+                        }
+                    }
+                    if (stored == null && j == updated.size()) {
+                        break;
+                    }
+                    final int cmp = j == updated.size() ? 1 : stored == null ? -1
+                            : Arrays.compareUnsigned(updated.get(j).getKey(), stored.path());
+                    if (position > Integer.MAX_VALUE) {
+                        throw new IOException("Index is too large");
+                    }
+                    offsets.add((int) position);
+                    if (cmp > 0) {
+                        position += write(out, stored.path(), stored.entry());
+                        stored = null;
+                    } else {
+                        if (cmp == 0) {
+                            stored = null;
+                        }
+                        final Map.Entry<byte[], Entry> entry = updated.get(j++);
+                        position += write(out, entry.getKey(), entry.getValue());
+                    }
+                }
+            }
+            close();
+            if (!changed) {
+                return;
+            }
+
+            final int[] relative = offsets.build().toArray();
+            final long table = HEADER + (long) Integer.BYTES * relative.length;
+            if (table + Files.size(entries) > Integer.MAX_VALUE) {
+                throw new IOException("Index is too large");
+            }
+            try (final DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(temp), SAVE_BLOCK))) {
+                out.writeInt(MAGIC);
+                out.writeInt(algorithm.ordinal());
+                out.writeInt(relative.length);
+                for (final int offset : relative) {
+                    out.writeInt((int) (table + offset));
+                }
+                Files.copy(entries, out);
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(entries);
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Closes the index file, later lookups miss
+     * @throws IOException if the file cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        final FileChannel current = channel;
+        channel = null;
+        if (current != null) {
+            current.close();
+        }
+    }
+}
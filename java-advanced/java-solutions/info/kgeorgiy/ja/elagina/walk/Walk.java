@@ -1,2 +1,305 @@
 package info.kgeorgiy.ja.elagina.walk;
-public class Walk {}
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Console application, that writes hashes of files listed in the input file.
+ * Directories are walked recursively, every file gets a line {@code "<hash> <path>"},
+ * files that cannot be read get a zero hash.
+ * Files are hashed in parallel, lines are written in the order of the input file.
+ * With a {@link HashIndex hash index}, only files modified since the previous walk are hashed.
+ * @author Elagina Alena
+ */
+public class Walk {
+    /**
+     * Size of read buffers
+     */
+    private static final int BUFFER_SIZE = 1 << 16;
+    /**
+     * Minimal size of files, that are hashed through memory mapping
+     */
+    private static final long MAP_THRESHOLD = 1 << 22;
+    /**
+     * Maximal size of a mapped region
+     */
+    private static final long MAP_SIZE = 1 << 26;
+    /**
+     * Number of hashed files, that may wait to be written, per worker
+     */
+    private static final int WINDOW_PER_WORKER = 64;
+    /**
+     * Direct read buffer of each worker
+     */
+    private static final ThreadLocal<ByteBuffer> BUFFERS =
+            ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(BUFFER_SIZE));
+
+    /**
+     * Hash function of file contents
+     */
+    private final HashAlgorithm algorithm;
+    /**
+     * Workers, that hash files
+     */
+    private final ExecutorService workers;
+    /**
+     * Maximal number of pending lines
+     */
+    private final int window;
+    /**
+     * Lines, that are not written yet, in output order
+     */
+    private final Deque<Line> pending = new ArrayDeque<>();
+    /**
+     * Output file
+     */
+    private final BufferedWriter writer;
+    /**
+     * Hashes of previous walks, {@code null} if all files are hashed
+     */
+    private final HashIndex index;
+
+    /**
+     * Line of the output
+     * @param path path of the file
+     * @param hash hash of the file
+     */
+    private record Line(String path, Future<String> hash) {}
+
+    /**
+     * @param algorithm hash function of file contents
+     * @param threads number of workers
+     * @param writer output file
+     * @param index hashes of previous walks, {@code null} to hash all files
+     */
+    private Walk(final HashAlgorithm algorithm, final int threads, final BufferedWriter writer,
+                 final HashIndex index) {
+        this.algorithm = algorithm;
+        this.workers = Executors.newFixedThreadPool(threads);
+        this.window = threads * WINDOW_PER_WORKER;
+        this.writer = writer;
+        this.index = index;
+    }
+
+    /**
+     * Writes hashes of all files listed in the input file
+     * @param input file with paths, one per line
+     * @param output file for hashes
+     * @param algorithm hash function of file contents
+     * @param threads number of threads, that hash files
+     * @param indexFile file with hashes of previous walks, {@code null} to hash all files
+     * @throws IOException if input file cannot be read or output or index file cannot be written
+     */
+    static void walk(final Path input, final Path output, final HashAlgorithm algorithm, final int threads,
+                     final Path indexFile) throws IOException {
+        final Path parent = output.getParent();
+        if (parent != null) {
+            try {
+                Files.createDirectories(parent);
+            } catch (final IOException ignored) {
+                // Opening the output file reports the problem
+            }
+        }
+
+        try (final HashIndex index = indexFile == null ? null : new HashIndex(indexFile, algorithm)) {
+            try (final BufferedReader reader = Files.newBufferedReader(input, StandardCharsets.UTF_8);
+                 final BufferedWriter writer = Files.newBufferedWriter(output, StandardCharsets.UTF_8)) {
+                final Walk walk = new Walk(algorithm, threads, writer, index);
+                try {
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        walk.walk(line);
+                    }
+                    walk.flush(0);
+                } finally {
+                    walk.workers.shutdownNow();
+                }
+            }
+            if (index != null) {
+                index.save();
+            }
+        }
+    }
+
+    /**
+     * Hashes files of the path from the input file
+     * @param line path of file or directory
+     * @throws IOException if output file cannot be written
+     */
+    private void walk(final String line) throws IOException {
+        if (line.isBlank()) {
+            // Empty path would be the current directory
+            failed(line);
+            return;
+        }
+        final Path root;
+        try {
+            root = Path.of(line);
+        } catch (final InvalidPathException e) {
+            failed(line);
+            return;
+        }
+
+        Files.walkFileTree(root, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs) throws IOException {
+                if (index == null || !attrs.isRegularFile()) {
+                    add(new Line(file.toString(), workers.submit(() -> hash(file))));
+                    return FileVisitResult.CONTINUE;
+                }
+
+                final String path = file.toAbsolutePath().normalize().toString();
+                final long size = attrs.size();
+                final long modified = attrs.lastModifiedTime().to(TimeUnit.NANOSECONDS);
+                final String cached = index.lookup(path, size, modified);
+                if (cached != null) {
+                    add(new Line(file.toString(), CompletableFuture.completedFuture(cached)));
+                } else {
+                    add(new Line(file.toString(), workers.submit(() -> {
+                        try {
+                            final String hash = digest(file);
+                            index.update(path, size, modified, hash);
+                            return hash;
+                        } catch (final IOException | SecurityException e) {
+                            return algorithm.zero();
+                        }
+                    })));
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(final Path file, final IOException exc) throws IOException {
+                failed(file.toString());
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    /**
+     * Adds line of a file, that cannot be read
+     * @param path path of the file
+     * @throws IOException if output file cannot be written
+     */
+    private void failed(final String path) throws IOException {
+        add(new Line(path, CompletableFuture.completedFuture(algorithm.zero())));
+    }
+
+    /**
+     * Adds line to the output, waiting for earlier lines if too many lines are pending
+     * @param line next line of the output
+     * @throws IOException if output file cannot be written
+     */
+    private void add(final Line line) throws IOException {
+        pending.addLast(line);
+        flush(window);
+    }
+
+    /**
+     * Writes earliest pending lines
+     * @param limit number of lines, that may stay pending
+     * @throws IOException if output file cannot be written
+     */
+    private void flush(final int limit) throws IOException {
+        while (pending.size() > limit) {
+            final Line line = pending.removeFirst();
+            String hash;
+            try {
+                hash = line.hash().get();
+            } catch (final ExecutionException e) {
+                hash = algorithm.zero();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while hashing " + line.path());
+            }
+            writer.write(hash);
+            writer.write(' ');
+            writer.write(line.path());
+            writer.newLine();
+        }
+    }
+
+    /**
+     * Hashes contents of the file.
+     * Large files are mapped into memory, other files are read into direct buffer of the worker,
+     * so contents are not copied into the heap.
+     * @param file file to hash
+     * @return hash of the file
+     * @throws IOException if the file cannot be read
+     */
+    private String digest(final Path file) throws IOException {
+        final HashAlgorithm.Hash hash = algorithm.newHash();
+        try (final FileChannel channel = FileChannel.open(file)) {
+            final long size = channel.size();
+            if (size >= MAP_THRESHOLD) {
+                for (long position = 0; position < size; position += MAP_SIZE) {
+                    hash.update(channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(MAP_SIZE, size - position)));
+                }
+            } else {
+                final ByteBuffer buffer = BUFFERS.get();
+                while (channel.read(buffer.clear()) >= 0) {
+                    hash.update(buffer.flip());
+                }
+            }
+            return hash.digest();
+        }
+    }
+
+    /**
+     * Hashes contents of the file
+     * @param file file to hash
+     * @return hash of the file, zero hash if it cannot be read
+     */
+    private String hash(final Path file) {
+        try {
+            return digest(file);
+        } catch (final IOException | SecurityException e) {
+            return algorithm.zero();
+        }
+    }
+
+    /**
+     * Entry point for console application, that hashes files
+     * @param args input file, output file, optional hash algorithm ({@code jenkins} or {@code sha-1}),
+     *             optional number of threads and optional file with hashes of previous walks
+     */
+    public static void main(final String[] args) {
+        if (args == null || args.length < 2 || args.length > 5 || args[0] == null || args[1] == null) {
+            System.err.println("Usage: Walk input output [jenkins|sha-1 [threads [index]]]");
+            return;
+        }
+        try {
+            final HashAlgorithm algorithm = args.length > 2 ? HashAlgorithm.forName(args[2]) : HashAlgorithm.JENKINS;
+            final int threads = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+            if (threads < 1) {
+                System.err.println("Number of threads must be positive");
+                return;
+            }
+            final Path index = args.length > 4 ? Path.of(args[4]) : null;
+            walk(Path.of(args[0]), Path.of(args[1]), algorithm, threads, index);
+        } catch (final IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+        } catch (final IOException e) {
+            System.err.println("Cannot walk files: " + e.getMessage());
+        }
+    }
+}
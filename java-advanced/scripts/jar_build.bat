@@ -1,9 +1,10 @@
 @echo off
 set lib=..\..\java-advanced-2024\artifacts\info.kgeorgiy.java.advanced.implementor.jar
+set src=..\java-solutions\info\kgeorgiy\ja\elagina\implementor
 
-javac -cp "%lib%" ..\java-solutions\info\kgeorgiy\ja\elagina\implementor\Implementor.java
+javac -cp "%lib%" %src%\*.java
 
-jar -cfm Implementor.jar META-INF\MANIFEST.MF ..\java-solutions\info\kgeorgiy\ja\elagina\implementor\Implementor.class
+jar -cfm Implementor.jar META-INF\MANIFEST.MF %src%\*.class
 
-del ..\java-solutions\info\kgeorgiy\ja\elagina\implementor\Implementor.class
+del %src%\*.class
 